@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+//workloads measured by kmeans.bench, JMH refuses benchmarks in the default package and a named package
+//cannot see the engines, so benchmarks reach this class by name and only get back Supplier
+public class BenchFixtures {
+    private static final String DATA = Location.DATA_FILE;
+    private static final int LEAVES_PER_THREAD = 4;
+    private static final Map<Integer, LocationStore> stores = new ConcurrentHashMap<>();
+    private static final List<ForkJoinPool> pools = new ArrayList<>();
+    private static Server server;
+
+    //same points for every benchmark of one size, padded with random points past the end of the file
+    static LocationStore store(int points) {
+        return stores.computeIfAbsent(points, size -> {
+            LocationStore store = new LocationStore(size);
+            Location.loadLocations(DATA, store, size, Runtime.getRuntime().availableProcessors());
+            return store;
+        });
+    }
+
+    static Location[] centroids(int points, int k) {
+        return new RandomInitializer().initialize(store(points), k, new Random(12345L));
+    }
+
+    //0 threads = all cores
+    static int threads(int threads) {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    //whole fit, engine is new for every call since seeding happens in the constructor
+    public static Supplier<Object> fit(String engine, int points, int k, int threads, String wire) {
+        LocationStore locations = store(points);
+        if (engine.equals("distributed")) {
+            startLoopbackServer();
+        }
+
+        return () -> {
+            KMeansAlgorithm algorithm;
+            switch (engine) {
+                case "single":
+                    algorithm = new KMeans(k, locations);
+                    break;
+                case "parallel":
+                    algorithm = new ParallelKMeans(locations, k, AssignmentMode.STANDARD, threads(threads));
+                    break;
+                case "distributed":
+                    algorithm = new DistributedKMeans(k, locations, new RandomInitializer(), WireProtocol.valueOf(wire));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown engine: " + engine);
+            }
+
+            try {
+                algorithm.fit();
+                return algorithm.getCentroids();
+            } finally {
+                algorithm.shutdown();
+            }
+        };
+    }
+
+    //DistributedKMeans always talks to 127.0.0.1:7777
+    private static synchronized void startLoopbackServer() {
+        if (server == null) {
+            server = new NioServer(7777);
+            server.setDaemon(true);
+            server.start();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //one pass of the distance kernel over all points, single thread
+    public static Supplier<Object> assignment(int points, int k, String mode) {
+        LocationStore locations = store(points);
+        double[] centroidData = flatten(centroids(points, k));
+        DistanceKernel kernel = DistanceKernel.create(AssignmentMode.valueOf(mode));
+
+        return () -> {
+            kernel.assign(locations.la(), locations.lo(), locations.capacity(), 0, locations.size(), centroidData, locations.assignment());
+            return locations.assignment();
+        };
+    }
+
+    //assignment with per-leaf sums and the merge tree, what ParallelKMeans and every peer do per iteration
+    public static Supplier<Object> reduction(int points, int k, int threads) {
+        LocationStore locations = store(points);
+        double[] centroidData = flatten(centroids(points, k));
+        DistanceKernel kernel = DistanceKernel.create(AssignmentMode.STANDARD);
+        ForkJoinPool pool = new ForkJoinPool(threads(threads));
+        synchronized (pools) {
+            pools.add(pool);
+        }
+
+        int leaves = Math.max(1, Math.min(points, pool.getParallelism() * LEAVES_PER_THREAD));
+        int leafSize = (points + leaves - 1) / leaves;
+        return () -> {
+            double[][] sums = new double[leaves][k * 3];
+            long[][] counts = new long[leaves][k];
+            pool.invoke(new AssignmentTask(locations, centroidData, null, kernel, sums, counts, leafSize, 0, leaves));
+            return sums[0];
+        };
+    }
+
+    //coordinator side: sum binary partials of every peer, then the weighted means
+    public static Supplier<Object> merge(int k, int peers) {
+        Random random = new Random(12345L);
+        BinaryFrame[] frames = new BinaryFrame[peers];
+        for (int p = 0; p < peers; p++) {
+            double[] sums = new double[k * 3];
+            long[] counts = new long[k];
+            for (int i = 0; i < k; i++) {
+                counts[i] = 1 + random.nextInt(1000);
+                sums[i * 3] = counts[i] * (48 + 6 * random.nextDouble());
+                sums[i * 3 + 1] = counts[i] * (8 + 5 * random.nextDouble());
+                sums[i * 3 + 2] = counts[i] * 116 * random.nextDouble();
+            }
+            frames[p] = new BinaryFrame(BinaryProtocol.KMEANS, p, BinaryProtocol.encodePartials(sums, counts));
+        }
+
+        return () -> {
+            double[] sums = new double[k * 3];
+            long[] counts = new long[k];
+            for (BinaryFrame frame : frames) {
+                BinaryProtocol.addPartials(frame, sums, counts);
+            }
+            Location[] means = new Location[k];
+            for (int i = 0; i < k; i++) {
+                means[i] = new Location("Centroid", sums[i * 3 + 2] / counts[i], sums[i * 3] / counts[i], sums[i * 3 + 1] / counts[i]);
+            }
+            return means;
+        };
+    }
+
+    //encode and decode of one message, labels cover all points, payload and partials depend only on k
+    public static Supplier<Object> serialization(String codec, int points, int k) {
+        Location[] centroids = centroids(points, k);
+        double[] sums = new double[k * 3];
+        long[] counts = new long[k];
+        for (int i = 0; i < k; i++) {
+            sums[i * 3] = centroids[i].getLa() * (i + 1);
+            sums[i * 3 + 1] = centroids[i].getLo() * (i + 1);
+            sums[i * 3 + 2] = centroids[i].getCapacity() * (i + 1);
+            counts[i] = i + 1;
+        }
+        int[] labels = ClusterLabels.assign(store(points), 0, points, centroids, DistanceKernel.create(AssignmentMode.STANDARD));
+
+        switch (codec) {
+            case "binaryPayload":
+                return () -> BinaryProtocol.decodePayload(new BinaryFrame(BinaryProtocol.KMEANS, 1,
+                        BinaryProtocol.encodePayload(1, 0, points, centroids)));
+            case "jsonPayload":
+                return () -> JsonPayloadParser.parsePayload(DistributedKMeans.createJsonPayload(1, 0, points, centroids));
+            case "binaryPartials":
+                return () -> BinaryProtocol.decodePartials(new BinaryFrame(BinaryProtocol.KMEANS, 1,
+                        BinaryProtocol.encodePartials(sums, counts)));
+            case "jsonPartials":
+                return () -> DistributedKMeans.parsePartialCentroids(RequestHandler.partialsToJson(sums, counts));
+            case "binaryLabels":
+                return () -> ClusterLabels.decode(ClusterLabels.encode(labels));
+            case "jsonLabels":
+                return () -> ClusterLabels.fromJson(ClusterLabels.toJson(labels));
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+    }
+
+    //reads up to points locations from the data file, the cache variant writes the cache first if needed
+    public static Supplier<Object> loading(String loader, int points, int threads) {
+        if (loader.equals("cache") && !LocationCache.isCurrent(DATA)) {
+            try {
+                LocationCache.write(DATA);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return () -> {
+            LocationStore store = new LocationStore(Math.min(points, 1 << 16));
+            try {
+                switch (loader) {
+                    case "stream":
+                        LocationLoader.load(DATA, store, points);
+                        break;
+                    case "parallel":
+                        LocationLoader.loadParallel(DATA, store, points, threads(threads));
+                        break;
+                    case "cache":
+                        LocationCache.load(DATA, store, points);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown loader: " + loader);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return store;
+        };
+    }
+
+    public static void close() {
+        synchronized (pools) {
+            for (ForkJoinPool pool : pools) {
+                pool.shutdown();
+            }
+            pools.clear();
+        }
+    }
+
+    private static double[] flatten(Location[] centroids) {
+        double[] data = new double[centroids.length * 3];
+        for (int i = 0; i < centroids.length; i++) {
+            data[i * 3] = centroids[i].getLa();
+            data[i * 3 + 1] = centroids[i].getLo();
+            data[i * 3 + 2] = centroids[i].getCapacity();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,62 @@
+package kmeans.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//assignment phase alone: one kernel pass over all points, and the fork/join pass that also sums per cluster
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class AssignmentBenchmark {
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int points;
+
+    @Param({"8", "64", "1024"})
+    public int k;
+
+    @State(Scope.Benchmark)
+    public static class Kernel {
+        @Param({"STANDARD", "VECTOR"})
+        public String mode;
+
+        Supplier<Object> assign;
+
+        @Setup(Level.Trial)
+        public void setup(AssignmentBenchmark sizes) {
+            assign = Fixtures.create("assignment", sizes.points, sizes.k, mode);
+        }
+    }
+
+    @Benchmark
+    public Object kernel(Kernel kernel) {
+        return kernel.assign.get();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Reduction {
+        @Param({"1", "4", "0"})
+        public int threads;
+
+        Supplier<Object> reduce;
+
+        @Setup(Level.Trial)
+        public void setup(AssignmentBenchmark sizes) {
+            reduce = Fixtures.create("reduction", sizes.points, sizes.k, threads);
+        }
+    }
+
+    @Benchmark
+    public Object assignAndReduce(Reduction reduction) {
+        return reduction.reduce.get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Fixtures.close();
+    }
+}
@@ -0,0 +1,79 @@
+package kmeans.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//one full fit per invocation, fits are long so every invocation is measured on its own
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class FitBenchmark {
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int points;
+
+    @Param({"8", "64", "1024"})
+    public int k;
+
+    @State(Scope.Benchmark)
+    public static class Single {
+        Supplier<Object> fit;
+
+        @Setup(Level.Trial)
+        public void setup(FitBenchmark sizes) {
+            fit = Fixtures.create("fit", "single", sizes.points, sizes.k, 1, "BINARY");
+        }
+    }
+
+    @Benchmark
+    public Object kmeans(Single single) {
+        return single.fit.get();
+    }
+
+    //ParallelKMeans over a number of threads, 0 = all cores
+    @State(Scope.Benchmark)
+    public static class Parallel {
+        @Param({"1", "4", "0"})
+        public int threads;
+
+        Supplier<Object> fit;
+
+        @Setup(Level.Trial)
+        public void setup(FitBenchmark sizes) {
+            fit = Fixtures.create("fit", "parallel", sizes.points, sizes.k, threads, "BINARY");
+        }
+    }
+
+    @Benchmark
+    public Object parallelKMeans(Parallel parallel) {
+        return parallel.fit.get();
+    }
+
+    //DistributedKMeans against an in-process NioServer on 127.0.0.1:7777
+    @State(Scope.Benchmark)
+    public static class Loopback {
+        @Param({"BINARY", "JSON"})
+        public String wire;
+
+        Supplier<Object> fit;
+
+        @Setup(Level.Trial)
+        public void setup(FitBenchmark sizes) {
+            fit = Fixtures.create("fit", "distributed", sizes.points, sizes.k, 0, wire);
+        }
+    }
+
+    @Benchmark
+    public Object distributedKMeans(Loopback loopback) {
+        return loopback.fit.get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Fixtures.close();
+    }
+}
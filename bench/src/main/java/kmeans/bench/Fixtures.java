@@ -0,0 +1,45 @@
+package kmeans.bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+//calls the static factories of the default-package BenchFixtures, see its comment for why this is reflective
+final class Fixtures {
+    private static final Class<?> BRIDGE;
+
+    static {
+        try {
+            BRIDGE = Class.forName("BenchFixtures");
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Fixtures() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> create(String factory, Object... args) {
+        return (Supplier<Object>) invoke(factory, args);
+    }
+
+    static void close() {
+        invoke("close");
+    }
+
+    private static Object invoke(String name, Object... args) {
+        for (Method method : BRIDGE.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+                try {
+                    return method.invoke(null, args);
+                } catch (InvocationTargetException e) {
+                    throw new RuntimeException(name + " failed", e.getCause());
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        throw new IllegalArgumentException("No fixture " + name + " with " + args.length + " arguments");
+    }
+}
@@ -0,0 +1,37 @@
+package kmeans.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//reading the data file into a LocationStore: streaming json, parallel json ranges and the mapped cache
+//points past the end of the file are not padded here, so the largest sizes measure the whole file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadingBenchmark {
+    @Param({"stream", "parallel", "cache"})
+    public String loader;
+
+    @Param({"10000", "10000000"})
+    public int points;
+
+    @Param({"0"})
+    public int threads;
+
+    private Supplier<Object> load;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        load = Fixtures.create("loading", loader, points, threads);
+    }
+
+    @Benchmark
+    public Object load() {
+        return load.get();
+    }
+}
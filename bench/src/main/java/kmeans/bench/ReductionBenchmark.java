@@ -0,0 +1,33 @@
+package kmeans.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//coordinator reduction: summing the binary partials of every peer into new centroids
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReductionBenchmark {
+    @Param({"8", "64", "1024"})
+    public int k;
+
+    @Param({"1", "4", "16", "64"})
+    public int peers;
+
+    private Supplier<Object> merge;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        merge = Fixtures.create("merge", k, peers);
+    }
+
+    @Benchmark
+    public Object mergePartials() {
+        return merge.get();
+    }
+}
@@ -0,0 +1,37 @@
+package kmeans.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//encode + decode of every message a fit sends, binary against JSON
+//payload and partials depend only on k, labels on the number of points
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"binaryPayload", "jsonPayload", "binaryPartials", "jsonPartials", "binaryLabels", "jsonLabels"})
+    public String codec;
+
+    @Param({"10000", "1000000"})
+    public int points;
+
+    @Param({"8", "64", "1024"})
+    public int k;
+
+    private Supplier<Object> roundTrip;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        roundTrip = Fixtures.create("serialization", codec, points, k);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        return roundTrip.get();
+    }
+}
@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptivePartitionerTest {
+    private static final int POINTS = 1_000_000;
+
+    //ranges are contiguous, cover every point and none is below MIN_SHARE of an equal share
+    private static void assertBounded(AdaptivePartitioner partitioner) {
+        int workers = partitioner.workers();
+        long floor = (long) Math.floor(POINTS * AdaptivePartitioner.MIN_SHARE / workers) - 1; // -1 for rounding
+        assertEquals(0, partitioner.start(0));
+        assertEquals(POINTS, partitioner.end(workers - 1));
+        for (int i = 0; i < workers; i++) {
+            int length = partitioner.end(i) - partitioner.start(i);
+            assertTrue(length >= floor, "worker " + i + " got " + length + " points, floor is " + floor + ": " + partitioner);
+            if (i > 0) {
+                assertEquals(partitioner.end(i - 1), partitioner.start(i));
+            }
+        }
+    }
+
+    private static int length(AdaptivePartitioner partitioner, int worker) {
+        return partitioner.end(worker) - partitioner.start(worker);
+    }
+
+    @Test
+    void startsWithEqualShares() {
+        AdaptivePartitioner partitioner = new AdaptivePartitioner(4, POINTS);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(POINTS / 4, length(partitioner, i));
+        }
+        partitioner.rebalance(); // nothing measured yet
+        assertEquals(POINTS / 4, length(partitioner, 0));
+    }
+
+    @Test
+    void fasterWorkerGetsMore() {
+        AdaptivePartitioner partitioner = new AdaptivePartitioner(3, POINTS);
+        partitioner.record(0, length(partitioner, 0), 100);
+        partitioner.record(1, length(partitioner, 1), 200);
+        partitioner.record(2, length(partitioner, 2), 400);
+        partitioner.rebalance();
+
+        assertTrue(length(partitioner, 0) > length(partitioner, 1));
+        assertTrue(length(partitioner, 1) > length(partitioner, 2));
+        assertBounded(partitioner);
+    }
+
+    @Test
+    void slowWorkersKeepMinShare() {
+        for (int workers : new int[]{2, 3, 8, 33}) {
+            AdaptivePartitioner partitioner = new AdaptivePartitioner(workers, POINTS);
+            for (int round = 0; round < 50; round++) {
+                partitioner.record(0, Math.max(1, length(partitioner, 0)), 1);
+                for (int i = 1; i < workers; i++) {
+                    partitioner.record(i, Math.max(1, length(partitioner, i)), 1_000_000);
+                }
+                partitioner.rebalance();
+                assertBounded(partitioner);
+            }
+            assertTrue(length(partitioner, 0) > POINTS / 2, "fast worker takes most: " + partitioner);
+        }
+    }
+
+    @Test
+    void unmeasuredWorkersCountAsAverage() {
+        AdaptivePartitioner partitioner = new AdaptivePartitioner(4, POINTS);
+        partitioner.record(0, 1000, 1);
+        partitioner.record(1, 0, 1); // nothing assigned, ignored
+        partitioner.record(2, 1000, 0); // no time, ignored
+        partitioner.rebalance();
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(POINTS / 4, length(partitioner, i), 1);
+        }
+        assertBounded(partitioner);
+    }
+}
@@ -0,0 +1,58 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//bounds and SIMD only skip or batch distance computations, every mode has to end with the labels of STANDARD
+class AssignmentModeTest {
+    private static final int POINTS = 20_000;
+
+    //same box as the random padding of Location.loadLocations, every engine gets its own copy
+    static LocationStore points(int count, long seed) {
+        Random random = new Random(seed);
+        LocationStore store = new LocationStore(count);
+        for (int i = 0; i < count; i++) {
+            store.add("Location_" + i, 116.024 * random.nextDouble(), 48 + 6 * random.nextDouble(), 8 + 5 * random.nextDouble());
+        }
+        return store;
+    }
+
+    private static int[] labels(KMeansAlgorithm algorithm) {
+        try {
+            algorithm.fit();
+            return algorithm.getLabels();
+        } finally {
+            algorithm.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = AssignmentMode.class, names = {"HAMERLY", "ELKAN", "VECTOR"})
+    void singleThreadedMatchesStandard(AssignmentMode mode) {
+        for (int k : new int[]{8, 25}) {
+            int[] expected = labels(new KMeans(k, points(POINTS, k), AssignmentMode.STANDARD));
+            assertArrayEquals(expected, labels(new KMeans(k, points(POINTS, k), mode)), mode + " k=" + k);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = AssignmentMode.class, names = {"HAMERLY", "ELKAN", "VECTOR"})
+    void parallelMatchesStandard(AssignmentMode mode) {
+        for (int k : new int[]{8, 25}) {
+            int[] expected = labels(new ParallelKMeans(points(POINTS, k), k, AssignmentMode.STANDARD, 4));
+            assertArrayEquals(expected, labels(new ParallelKMeans(points(POINTS, k), k, mode, 4)), mode + " k=" + k);
+        }
+    }
+
+    @Test
+    void parallelMatchesSingleThreaded() {
+        int[] expected = labels(new KMeans(8, points(POINTS, 1), AssignmentMode.STANDARD));
+        int[] labels = labels(new ParallelKMeans(points(POINTS, 1), 8, AssignmentMode.STANDARD, 4));
+        assertEquals(expected.length, labels.length);
+        assertArrayEquals(expected, labels);
+    }
+}
@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryProtocolTest {
+    private static final Location[] CENTROIDS = {
+            new Location("Centroid", 12.5, 51.4, 13.7333),
+            new Location("Centroid", 0, 0, 0),
+            new Location("Centroid", 116.024, 53.99, 8.01),
+    };
+
+    private static BinaryFrame roundTrip(BinaryFrame frame) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryProtocol.writeFrame(out, frame);
+        return BinaryProtocol.readFrame(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static void assertCentroids(Location[] decoded) {
+        assertEquals(CENTROIDS.length, decoded.length);
+        for (int i = 0; i < CENTROIDS.length; i++) {
+            assertEquals(CENTROIDS[i].getLa(), decoded[i].getLa());
+            assertEquals(CENTROIDS[i].getLo(), decoded[i].getLo());
+            assertEquals(CENTROIDS[i].getCapacity(), decoded[i].getCapacity());
+        }
+    }
+
+    @Test
+    void frameRoundTrip() throws IOException {
+        byte[] body = {1, 2, 3, (byte) 0xB7, 0, -1};
+        BinaryFrame decoded = roundTrip(new BinaryFrame(BinaryProtocol.STATS, 42, body));
+        assertEquals(BinaryProtocol.STATS, decoded.getCommand());
+        assertEquals(42, decoded.getRequestId());
+        assertArrayEquals(body, decoded.getBody());
+
+        assertEquals(0, roundTrip(new BinaryFrame(BinaryProtocol.ATTACH, 7, new byte[0])).getBody().length);
+    }
+
+    @Test
+    void payloadRoundTrip() throws IOException {
+        byte[] body = BinaryProtocol.encodePayload(3, 100, 2000, CENTROIDS, 987654321L, 17);
+        Payload payload = BinaryProtocol.decodePayload(roundTrip(new BinaryFrame(BinaryProtocol.KMEANS, 1, body)));
+        assertEquals(3, payload.getDatasetId());
+        assertEquals(100, payload.getStart());
+        assertEquals(2000, payload.getEnd());
+        assertEquals(987654321L, payload.getFitId());
+        assertEquals(17, payload.getIteration());
+        assertCentroids(payload.getCentroids());
+    }
+
+    @Test
+    void partialsRoundTrip() throws IOException {
+        double[] sums = {1.5, -2.25, 3e9, 0, 0, 0, 7, 8, 9};
+        long[] counts = {5_000_000_000L, 0, 3};
+        BinaryFrame frame = roundTrip(new BinaryFrame(BinaryProtocol.KMEANS, 2, BinaryProtocol.encodePartials(sums, counts)));
+
+        PartialSums partials = BinaryProtocol.decodePartials(frame);
+        assertArrayEquals(sums, partials.sums);
+        assertArrayEquals(counts, partials.counts);
+
+        double[] total = sums.clone();
+        long[] totalCounts = counts.clone();
+        BinaryProtocol.addPartials(frame, total, totalCounts);
+        assertEquals(2 * sums[2], total[2]);
+        assertEquals(2 * counts[0], totalCounts[0]);
+    }
+
+    @Test
+    void aggregateRoundTrip() throws IOException {
+        AdaptivePartitioner partitioner = new AdaptivePartitioner(5, 10_000);
+        String[] hosts = {"10.0.0.1", "10.0.0.2", "peer-3", "10.0.0.4", "10.0.0.5"};
+        int[] ports = {7777, 7778, 7779, 7780, 7781};
+        AggregationNode root = AggregationNode.tree(hosts, ports, partitioner, 2);
+
+        byte[] body = BinaryProtocol.encodeAggregate(9, CENTROIDS, root, 55L, 4);
+        Payload payload = BinaryProtocol.decodeAggregate(roundTrip(new BinaryFrame(BinaryProtocol.AGGREGATE, 3, body)));
+        assertEquals(9, payload.getDatasetId());
+        assertEquals(partitioner.start(0), payload.getStart());
+        assertEquals(partitioner.end(0), payload.getEnd());
+        assertEquals(55L, payload.getFitId());
+        assertEquals(4, payload.getIteration());
+        assertCentroids(payload.getCentroids());
+
+        //heap shape with fanout 2: 0 -> 1, 2 and 1 -> 3, 4
+        assertEquals(2, payload.getChildren().size());
+        AggregationNode first = payload.getChildren().get(0);
+        assertEquals("10.0.0.2", first.getHost());
+        assertEquals(7778, first.getPort());
+        assertEquals(2, first.getChildren().size());
+        assertEquals("10.0.0.5", first.getChildren().get(1).getHost());
+        assertEquals(partitioner.end(4), first.getChildren().get(1).getEnd());
+        assertEquals("peer-3", payload.getChildren().get(1).getHost());
+    }
+
+    @Test
+    void untracedPayloadHasNoFit() {
+        Payload payload = BinaryProtocol.decodePayload(new BinaryFrame(BinaryProtocol.KMEANS, 1,
+                BinaryProtocol.encodePayload(-1, 0, 10, CENTROIDS)));
+        assertEquals(0, payload.getFitId());
+        assertEquals(-1, payload.getIteration());
+    }
+
+    @Test
+    void oversizedFrameIsRejected() {
+        ByteBuffer header = ByteBuffer.allocate(BinaryProtocol.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(BinaryProtocol.MAGIC).put(BinaryProtocol.KMEANS).putInt(1).putInt(BinaryProtocol.MAX_REQUEST + 1);
+        assertThrows(IOException.class, () -> BinaryProtocol.readFrame(new ByteArrayInputStream(header.array()), BinaryProtocol.MAX_REQUEST));
+
+        header.putInt(6, -1);
+        assertThrows(IOException.class, () -> BinaryProtocol.readFrame(new ByteArrayInputStream(header.array())));
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterLabelsTest {
+    private static final int RUN_LENGTH = 0x80; // flag of ClusterLabels.encode
+
+    private static int[] random(int count, int k, long seed) {
+        Random random = new Random(seed);
+        int[] labels = new int[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = random.nextInt(k);
+        }
+        return labels;
+    }
+
+    //sorted points give long runs of one cluster
+    private static int[] runs(int count, int k) {
+        int[] labels = new int[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = (int) ((long) i * k / count);
+        }
+        return labels;
+    }
+
+    private static void assertRoundTrip(int[] labels, boolean runLength, int width) {
+        byte[] encoded = ClusterLabels.encode(labels);
+        int flags = encoded[0] & 0xFF;
+        assertEquals(runLength, (flags & RUN_LENGTH) != 0, "run length");
+        assertEquals(width, flags & ~RUN_LENGTH, "width");
+        assertArrayEquals(labels, ClusterLabels.decode(encoded));
+        assertArrayEquals(labels, ClusterLabels.fromJson(ClusterLabels.toJson(labels)));
+    }
+
+    @Test
+    void packedRoundTrip() {
+        assertRoundTrip(random(10_000, 8, 1), false, 1);
+        assertRoundTrip(random(10_000, 300, 2), false, 2);
+        assertRoundTrip(random(10_000, 100_000, 3), false, 4);
+    }
+
+    @Test
+    void runLengthRoundTrip() {
+        assertRoundTrip(runs(10_000, 8), true, 1);
+        assertRoundTrip(runs(100_000, 1000), true, 2);
+        assertRoundTrip(runs(1_000_000, 70_000), true, 4);
+
+        int[] same = new int[50_000];
+        Arrays.fill(same, 5);
+        assertRoundTrip(same, true, 1);
+        assertTrue(ClusterLabels.encode(same).length < 20);
+    }
+
+    @Test
+    void emptyAndUnassigned() {
+        assertArrayEquals(new int[0], ClusterLabels.decode(ClusterLabels.encode(new int[0])));
+        assertArrayEquals(new int[0], ClusterLabels.fromJson(ClusterLabels.toJson(new int[0])));
+
+        int[] unassigned = {-1, -1, 3, -1};
+        assertArrayEquals(unassigned, ClusterLabels.decode(ClusterLabels.encode(unassigned)));
+        assertArrayEquals(unassigned, ClusterLabels.fromJson(ClusterLabels.toJson(unassigned)));
+    }
+
+    @Test
+    void assignWritesOnlyTheReturnedBuffer() {
+        LocationStore locations = AssignmentModeTest.points(1000, 4);
+        Location[] centroids = new RandomInitializer().initialize(locations, 5, new Random(12345L));
+        int[] labels = ClusterLabels.assign(locations, 200, 700, centroids, new ScalarDistanceKernel());
+        assertEquals(500, labels.length);
+        for (int i = 0; i < locations.size(); i++) {
+            assertEquals(-1, locations.getAssignment(i), "store untouched at " + i);
+        }
+
+        ClusterLabels.apply(locations, 200, labels);
+        for (int i = 0; i < labels.length; i++) {
+            assertEquals(labels[i], locations.getAssignment(200 + i));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocationCacheTest {
+    private static final int COUNT = 500;
+
+    @TempDir
+    Path directory;
+
+    private String json;
+
+    //same shape as germany.json, some names are not ASCII and one is empty
+    @BeforeEach
+    void writeJson() throws IOException {
+        Random random = new Random(7);
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < COUNT; i++) {
+            String name = i == 3 ? "" : (i % 7 == 0 ? "Gr\\u00fcnewald " : "Ort ") + i;
+            builder.append(i == 0 ? "" : ",").append(String.format(Locale.ROOT,
+                    "{\"name\":\"%s\",\"capacity\":%.11f,\"la\":\"%.4f\",\"lo\":\"%.4f\"}",
+                    name, 30 * random.nextDouble(), 48 + 6 * random.nextDouble(), 8 + 5 * random.nextDouble()));
+        }
+        Path file = directory.resolve("points.json");
+        Files.writeString(file, builder.append("]").toString(), StandardCharsets.UTF_8);
+        json = file.toString();
+    }
+
+    private LocationStore fromJson() throws IOException {
+        LocationStore store = new LocationStore();
+        LocationLoader.load(json, store, Integer.MAX_VALUE);
+        return store;
+    }
+
+    private static void assertSame(LocationStore expected, LocationStore actual, int count) {
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected.getName(i), actual.getName(i), "name " + i);
+            assertEquals(expected.getLa(i), actual.getLa(i), "la " + i);
+            assertEquals(expected.getLo(i), actual.getLo(i), "lo " + i);
+            assertEquals(expected.getCapacity(i), actual.getCapacity(i), "capacity " + i);
+            assertEquals(-1, actual.getAssignment(i));
+        }
+    }
+
+    @Test
+    void writeLoadRoundTrip() throws IOException {
+        LocationStore expected = fromJson();
+        assertEquals(COUNT, LocationCache.write(json));
+        assertTrue(LocationCache.isCurrent(json));
+
+        LocationStore all = new LocationStore();
+        assertEquals(COUNT, LocationCache.load(json, all, Integer.MAX_VALUE));
+        assertEquals(COUNT, all.size());
+        assertSame(expected, all, COUNT);
+        assertEquals("Grünewald 0", all.getName(0));
+
+        LocationStore some = new LocationStore();
+        assertEquals(100, LocationCache.load(json, some, 100));
+        assertEquals(100, some.size());
+        assertSame(expected, some, 100);
+    }
+
+    //lazily decoded names have to survive being copied into another store and mixed with added points
+    @Test
+    void namesSurviveCopies() throws IOException {
+        LocationStore expected = fromJson();
+        LocationCache.write(json);
+
+        LocationStore cached = new LocationStore();
+        LocationCache.load(json, cached, COUNT);
+        cached.add("Extra", 1, 50, 10);
+
+        LocationStore copy = new LocationStore(4);
+        copy.add("First", 2, 51, 11);
+        copy.addAll(cached, COUNT + 1);
+        assertEquals("First", copy.getName(0));
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(expected.getName(i), copy.getName(i + 1), "name " + i);
+        }
+        assertEquals("Extra", copy.getName(COUNT + 1));
+        assertEquals("Extra", cached.getName(COUNT));
+    }
+
+    @Test
+    void staleCacheIsIgnored() throws IOException {
+        LocationCache.write(json);
+        Path source = Path.of(json);
+        Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() + 60_000));
+
+        assertFalse(LocationCache.isCurrent(json));
+        LocationStore store = new LocationStore();
+        assertEquals(-1, LocationCache.load(json, store, COUNT));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void missingCacheIsIgnored() {
+        assertFalse(LocationCache.isCurrent(json));
+        assertEquals(-1, LocationCache.load(json, new LocationStore(), COUNT));
+    }
+}
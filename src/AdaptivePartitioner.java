@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+//splits [0, points) into one contiguous range per worker, sized by the points per millisecond each worker
+//reached so far, so faster peers get a bigger range in the next iteration
+public class AdaptivePartitioner {
+    private static final double WEIGHT = 0.5; // ewma, weight of the newest measurement
+    static final double MIN_SHARE = 0.25; // part of an equal share every worker keeps, so it stays measured
+
+    private final int points;
+    private final double[] throughput; // points per ms, 0 = not measured yet
+    private final int[] bounds; // range of worker i is [bounds[i], bounds[i + 1])
+
+    public AdaptivePartitioner(int workers, int points) {
+        this.points = points;
+        this.throughput = new double[workers];
+        this.bounds = new int[workers + 1];
+        split(equalShares());
+    }
+
+    public int workers() {
+        return throughput.length;
+    }
+
+    public synchronized int start(int worker) {
+        return bounds[worker];
+    }
+
+    public synchronized int end(int worker) {
+        return bounds[worker + 1];
+    }
+
+    public synchronized void record(int worker, int count, double millis) {
+        if (count <= 0 || millis <= 0) {
+            return;
+        }
+
+        double measured = count / millis;
+        double old = throughput[worker];
+        throughput[worker] = old == 0 ? measured : old + WEIGHT * (measured - old);
+    }
+
+    //new ranges from the measured throughput, unmeasured workers count as the average one
+    public synchronized void rebalance() {
+        double sum = 0;
+        int measured = 0;
+        for (double value : throughput) {
+            if (value > 0) {
+                sum += value;
+                measured++;
+            }
+        }
+        if (measured == 0) {
+            return;
+        }
+
+        double average = sum / measured;
+        double[] shares = new double[throughput.length];
+        double total = 0;
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] = throughput[i] > 0 ? throughput[i] : average;
+            total += shares[i];
+        }
+
+        //every worker gets the floor, the rest goes by throughput, so the floor still holds after the shares add up to 1
+        double floor = MIN_SHARE / shares.length;
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] = floor + (1 - MIN_SHARE) * shares[i] / total;
+        }
+
+        split(shares);
+    }
+
+    private double[] equalShares() {
+        double[] shares = new double[throughput.length];
+        Arrays.fill(shares, 1.0 / shares.length);
+        return shares;
+    }
+
+    private void split(double[] shares) {
+        double cumulative = 0;
+        bounds[0] = 0;
+        for (int i = 0; i < shares.length; i++) {
+            cumulative += shares[i];
+            bounds[i + 1] = i == shares.length - 1 ? points : (int) Math.round(points * cumulative);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Arrays.toString(bounds);
+    }
+}
@@ -0,0 +1,69 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//one peer in the aggregation tree: the range it assigns itself and the peers it forwards to,
+//every peer merges the sums of its subtree so the coordinator gets one result per iteration
+public class AggregationNode {
+    private final String host;
+    private final int port;
+    private final int start;
+    private final int end;
+    private final List<AggregationNode> children = new ArrayList<>();
+
+    public AggregationNode(String host, int port, int start, int end) {
+        this.host = host;
+        this.port = port;
+        this.start = start;
+        this.end = end;
+    }
+
+    public String getHost() { return host; }
+    public int getPort() { return port; }
+    public int getStart() { return start; }
+    public int getEnd() { return end; }
+    public List<AggregationNode> getChildren() { return children; }
+
+    //heap shaped tree over the peers, children of peer i are fanout * i + 1 ... fanout * i + fanout
+    public static AggregationNode tree(String[] host, int[] port, AdaptivePartitioner partitioner, int fanout) {
+        AggregationNode[] nodes = new AggregationNode[host.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new AggregationNode(host[i], port[i], partitioner.start(i), partitioner.end(i));
+        }
+        for (int i = 1; i < nodes.length; i++) {
+            nodes[(i - 1) / fanout].children.add(nodes[i]);
+        }
+        return nodes[0];
+    }
+
+    //host length(2) host port(4) start(4) end(4) children(2) then every child the same way
+    public int encodedSize() {
+        int size = 16 + host.getBytes(StandardCharsets.UTF_8).length;
+        for (AggregationNode child : children) {
+            size += child.encodedSize();
+        }
+        return size;
+    }
+
+    public void encode(ByteBuffer buffer) {
+        byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) hostBytes.length).put(hostBytes);
+        buffer.putInt(port).putInt(start).putInt(end).putShort((short) children.size());
+        for (AggregationNode child : children) {
+            child.encode(buffer);
+        }
+    }
+
+    public static AggregationNode decode(ByteBuffer buffer) {
+        byte[] hostBytes = new byte[buffer.getShort()];
+        buffer.get(hostBytes);
+        AggregationNode node = new AggregationNode(new String(hostBytes, StandardCharsets.UTF_8), buffer.getInt(), buffer.getInt(), buffer.getInt());
+
+        int children = buffer.getShort();
+        for (int i = 0; i < children; i++) {
+            node.children.add(decode(buffer));
+        }
+        return node;
+    }
+}
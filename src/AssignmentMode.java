@@ -0,0 +1,30 @@
+public enum AssignmentMode {
+    STANDARD,   // compute all k distances for every point
+    HAMERLY,    // one upper and one lower bound per point
+    ELKAN,      // one upper and k lower bounds per point
+    VECTOR,     // squared distances for a block of points in SIMD lanes, scalar if Vector API is missing
+    AUTO;       // hamerly for small k, elkan for larger k if bounds fit in memory
+
+    private static final int ELKAN_MIN_K = 20;
+    private static final long ELKAN_MAX_BOUNDS = 32_000_000L;
+
+    public AssignmentMode resolve(int k, int size) {
+        if (this != AUTO) {
+            return this;
+        }
+        if (k >= ELKAN_MIN_K && (long) k * size <= ELKAN_MAX_BOUNDS) {
+            return ELKAN;
+        }
+        return HAMERLY;
+    }
+
+    public static AssignmentMode fromChoice(int choice) {
+        switch (choice) {
+            case 1: return AUTO;
+            case 2: return HAMERLY;
+            case 3: return ELKAN;
+            case 4: return VECTOR;
+            default: return STANDARD;
+        }
+    }
+}
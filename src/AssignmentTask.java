@@ -0,0 +1,191 @@
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+//splits a range of leaves in half until one leaf is left, every leaf assigns its points into its own
+//preallocated sums[k*3] (la, lo, capacity) and counts[k], on the way back right half is merged into left half
+public class AssignmentTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final LocationStore locations;
+    private final double[] centroids; // k * 3, la lo capacity
+    private final BoundedAssignment bounds;
+    private final DistanceKernel kernel;
+    private final double[][] sums;
+    private final long[][] counts;
+    private final int start;
+    private final int end;
+    private final int leafSize;
+    private final int fromLeaf;
+    private final int toLeaf;
+    private final Tally tally;
+    private final int[] labels;     // label of point p is labels[p - labelOffset], the store column unless a request brings its own
+    private final int labelOffset;
+
+    //per leaf count of points that changed cluster and their inertia, for FitStats
+    public static class Tally {
+        private final int[] previous; // labels before the kernel overwrites them
+        private final long[] reassigned;
+        private final double[] inertia;
+
+        public Tally(int points, int leaves) {
+            this.previous = new int[points];
+            this.reassigned = new long[leaves];
+            this.inertia = new double[leaves];
+        }
+
+        public long reassigned() {
+            long total = 0;
+            for (long count : reassigned) {
+                total += count;
+            }
+            return total;
+        }
+
+        public double inertia() {
+            double total = 0;
+            for (double value : inertia) {
+                total += value;
+            }
+            return total;
+        }
+    }
+
+    public AssignmentTask(LocationStore locations, double[] centroids, BoundedAssignment bounds, DistanceKernel kernel,
+                          double[][] sums, long[][] counts, int leafSize, int fromLeaf, int toLeaf) {
+        this(locations, centroids, bounds, kernel, sums, counts, 0, locations.size(), leafSize, fromLeaf, toLeaf);
+    }
+
+    //only points in [start, end) are assigned, leaf i covers start + i * leafSize
+    public AssignmentTask(LocationStore locations, double[] centroids, BoundedAssignment bounds, DistanceKernel kernel,
+                          double[][] sums, long[][] counts, int start, int end, int leafSize, int fromLeaf, int toLeaf) {
+        this(locations, centroids, bounds, kernel, sums, counts, start, end, leafSize, fromLeaf, toLeaf, null);
+    }
+
+    //tally may be null, then nothing but sums and counts is computed
+    public AssignmentTask(LocationStore locations, double[] centroids, BoundedAssignment bounds, DistanceKernel kernel,
+                          double[][] sums, long[][] counts, int start, int end, int leafSize, int fromLeaf, int toLeaf, Tally tally) {
+        this(locations, centroids, bounds, kernel, sums, counts, start, end, leafSize, fromLeaf, toLeaf, tally, locations.assignment(), 0);
+    }
+
+    //labels of [start, end) go to labels[0, end - start), the store is only read, peers use it on shared datasets
+    public AssignmentTask(LocationStore locations, double[] centroids, DistanceKernel kernel, double[][] sums, long[][] counts,
+                          int start, int end, int leafSize, int fromLeaf, int toLeaf, int[] labels) {
+        this(locations, centroids, null, kernel, sums, counts, start, end, leafSize, fromLeaf, toLeaf, null, labels, start);
+    }
+
+    private AssignmentTask(LocationStore locations, double[] centroids, BoundedAssignment bounds, DistanceKernel kernel,
+                           double[][] sums, long[][] counts, int start, int end, int leafSize, int fromLeaf, int toLeaf, Tally tally,
+                           int[] labels, int labelOffset) {
+        this.labels = labels;
+        this.labelOffset = labelOffset;
+        this.start = start;
+        this.end = end;
+        this.locations = locations;
+        this.centroids = centroids;
+        this.bounds = bounds;
+        this.kernel = kernel;
+        this.sums = sums;
+        this.counts = counts;
+        this.leafSize = leafSize;
+        this.fromLeaf = fromLeaf;
+        this.toLeaf = toLeaf;
+        this.tally = tally;
+    }
+
+    @Override
+    protected void compute() {
+        if (toLeaf - fromLeaf == 1) {
+            computeLeaf(fromLeaf);
+            return;
+        }
+
+        int mid = (fromLeaf + toLeaf) >>> 1;
+        invokeAll(
+                new AssignmentTask(locations, centroids, bounds, kernel, sums, counts, start, end, leafSize, fromLeaf, mid, tally, labels, labelOffset),
+                new AssignmentTask(locations, centroids, bounds, kernel, sums, counts, start, end, leafSize, mid, toLeaf, tally, labels, labelOffset));
+
+        merge(fromLeaf, mid);
+    }
+
+    private void merge(int into, int from) {
+        double[] sum = sums[into];
+        double[] otherSum = sums[from];
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] += otherSum[i];
+        }
+
+        long[] count = counts[into];
+        long[] otherCount = counts[from];
+        for (int i = 0; i < count.length; i++) {
+            count[i] += otherCount[i];
+        }
+    }
+
+    private void computeLeaf(int leaf) {
+        double[] sum = sums[leaf];
+        long[] count = counts[leaf];
+        Arrays.fill(sum, 0);
+        Arrays.fill(count, 0);
+
+        int from = start + leaf * leafSize;
+        int to = Math.min(from + leafSize, end);
+
+        double[] la = locations.la();
+        double[] lo = locations.lo();
+        double[] capacity = locations.capacity();
+        int[] assignment = labels;
+        int offset = labelOffset;
+
+        if (tally != null) {
+            computeLeaf(leaf, from, to, sum, count, la, lo, capacity, assignment);
+            return;
+        }
+
+        if (bounds == null) {
+            kernel.assign(la, lo, capacity, from, to, centroids, assignment, offset);
+        }
+
+        for (int p = from; p < to; p++) {
+            int closest = bounds != null ? bounds.assign(p) : assignment[p - offset];
+            assignment[p - offset] = closest;
+
+            sum[closest * 3] += la[p];
+            sum[closest * 3 + 1] += lo[p];
+            sum[closest * 3 + 2] += capacity[p];
+            count[closest]++;
+        }
+    }
+
+    //same as above plus the tally, kept apart so the plain loop stays as tight as it was
+    //only engines use a tally, their labels are the store column (offset 0)
+    private void computeLeaf(int leaf, int from, int to, double[] sum, long[] count,
+                             double[] la, double[] lo, double[] capacity, int[] assignment) {
+        int[] previous = tally.previous;
+        System.arraycopy(assignment, from, previous, from, Math.max(0, to - from));
+        if (bounds == null) {
+            kernel.assign(la, lo, capacity, from, to, centroids, assignment);
+        }
+
+        long reassigned = 0;
+        double inertia = 0;
+        for (int p = from; p < to; p++) {
+            int closest = bounds != null ? bounds.assign(p) : assignment[p];
+            assignment[p] = closest;
+            if (closest != previous[p]) {
+                reassigned++;
+            }
+
+            double dLa = la[p] - centroids[closest * 3];
+            double dLo = lo[p] - centroids[closest * 3 + 1];
+            double dCapacity = capacity[p] - centroids[closest * 3 + 2];
+            inertia += dLa * dLa + dLo * dLo + dCapacity * dCapacity;
+
+            sum[closest * 3] += la[p];
+            sum[closest * 3 + 1] += lo[p];
+            sum[closest * 3 + 2] += capacity[p];
+            count[closest]++;
+        }
+        tally.reassigned[leaf] = reassigned;
+        tally.inertia[leaf] = inertia;
+    }
+}
@@ -0,0 +1,326 @@
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+//headless experiment sweep, no dialogs: every combination of modes x sizes x k x seeds x threads
+//is fitted warmup times and then repetitions times, every measured run is one row of <output>.csv and <output>.json
+//usage: BatchRunner [sweep.properties] [key=value ...], lists are comma separated
+//  modes=single,parallel,minibatch,distributed  sizes=10000  k=8  seeds=12345  threads=1
+//  assignment=STANDARD  init=random  batch=1024  wire=BINARY  warmup=1  repetitions=3
+//  parallelRuns=1  server=true  output=kmeans-results
+//single threaded configs run up to parallelRuns at once, each on its own copy of the points,
+//multi threaded and distributed configs own the machine and run one by one after them
+//data file is -Dkmeans.data, distributed runs start a NioServer on 7777 unless server=false
+public class BatchRunner {
+    private static final String[] COLUMNS = {"mode", "points", "k", "seed", "threads", "assignment", "init",
+            "repetition", "wallMillis", "iterations", "converged", "assignMillis", "reduceMillis", "networkMillis",
+            "serializationMillis", "bytesSent", "inertia", "error"};
+
+    private final Properties config;
+    private final Map<Integer, LocationStore> stores = new HashMap<>();
+    private final List<Run> runs = Collections.synchronizedList(new ArrayList<>());
+
+    public BatchRunner(Properties config) {
+        this.config = config;
+    }
+
+    //one point of the matrix
+    private static class Experiment {
+        final int index; // position in the matrix, output is sorted by it
+        final String mode;
+        final int points;
+        final int k;
+        final long seed;
+        final int threads;
+
+        Experiment(int index, String mode, int points, int k, long seed, int threads) {
+            this.index = index;
+            this.mode = mode;
+            this.points = points;
+            this.k = k;
+            this.seed = seed;
+            this.threads = threads;
+        }
+
+        //other experiments can share the machine with it without skewing its time
+        boolean sharesMachine() {
+            return !mode.equals("distributed") && threads == 1;
+        }
+    }
+
+    private static class Run {
+        final Experiment experiment;
+        final int repetition;
+        double wallMillis;
+        int iterations;
+        FitStats stats; // null when the fit failed
+        double inertia;
+        String error = "";
+
+        Run(Experiment experiment, int repetition) {
+            this.experiment = experiment;
+            this.repetition = repetition;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Properties config = new Properties();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                config.setProperty(arg.substring(0, equals).trim(), arg.substring(equals + 1).trim());
+            } else {
+                try (Reader reader = new FileReader(arg, StandardCharsets.UTF_8)) {
+                    Properties file = new Properties();
+                    file.load(reader);
+                    file.forEach((key, value) -> config.putIfAbsent(key, value)); // command line wins
+                }
+            }
+        }
+
+        BatchRunner runner = new BatchRunner(config);
+        runner.run();
+        runner.write(Path.of(config.getProperty("output", "kmeans-results")));
+        System.exit(0); // engines may leave non-daemon pool threads behind
+    }
+
+    public void run() throws InterruptedException {
+        List<Experiment> experiments = experiments();
+        if (experiments.stream().anyMatch(experiment -> experiment.mode.equals("distributed"))
+                && Boolean.parseBoolean(config.getProperty("server", "true"))) {
+            Server server = new NioServer(7777);
+            server.setDaemon(true);
+            server.start();
+            Thread.sleep(300);
+        }
+
+        //prvo jednonitni eksperimenti zajedno, pa ostali jedan po jedan
+        ExecutorService shared = Executors.newFixedThreadPool(Math.max(1, intOf("parallelRuns", "1")));
+        List<Future<?>> pending = new ArrayList<>();
+        for (Experiment experiment : experiments) {
+            if (experiment.sharesMachine()) {
+                pending.add(shared.submit(() -> measure(experiment)));
+            }
+        }
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Experiment failed", e.getCause());
+            }
+        }
+        shared.shutdown();
+
+        for (Experiment experiment : experiments) {
+            if (!experiment.sharesMachine()) {
+                measure(experiment);
+            }
+        }
+    }
+
+    private List<Experiment> experiments() {
+        List<Experiment> experiments = new ArrayList<>();
+        for (String mode : list("modes", "single")) {
+            for (String points : list("sizes", "10000")) {
+                for (String k : list("k", "8")) {
+                    for (String seed : list("seeds", "12345")) {
+                        //threads only mean something for the engines that use them
+                        List<String> threads = mode.equals("parallel") || mode.equals("minibatch") ? list("threads", "1") : List.of("1");
+                        for (String count : threads) {
+                            experiments.add(new Experiment(experiments.size(), mode, Integer.parseInt(points), Integer.parseInt(k), Long.parseLong(seed),
+                                    count.equals("0") ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(count)));
+                        }
+                    }
+                }
+            }
+        }
+        return experiments;
+    }
+
+    private void measure(Experiment experiment) {
+        int warmup = intOf("warmup", "1");
+        int repetitions = intOf("repetitions", "3");
+        for (int i = 0; i < warmup; i++) {
+            fit(new Run(experiment, -1));
+        }
+        for (int i = 0; i < repetitions; i++) {
+            Run run = new Run(experiment, i);
+            fit(run);
+            runs.add(run);
+            System.out.println(row(run));
+        }
+    }
+
+    private void fit(Run run) {
+        Experiment experiment = run.experiment;
+        LocationStore locations = new LocationStore(experiment.points);
+        locations.addAll(store(experiment.points), experiment.points);
+
+        AssignmentMode assignment = AssignmentMode.valueOf(config.getProperty("assignment", "STANDARD").toUpperCase(Locale.ROOT));
+        CentroidInitializer initializer = CentroidInitializer.fromName(config.getProperty("init", "random"));
+        CentroidInitializer seeded = (points, k, ignored) -> initializer.initialize(points, k, new Random(experiment.seed));
+
+        KMeansAlgorithm algorithm = null;
+        try {
+            switch (experiment.mode) {
+                case "single":
+                    algorithm = new KMeans(experiment.k, locations, assignment, seeded);
+                    break;
+                case "parallel":
+                    algorithm = new ParallelKMeans(locations, experiment.k, assignment, experiment.threads, seeded);
+                    break;
+                case "minibatch":
+                    algorithm = new MiniBatchKMeans(experiment.k, locations, intOf("batch", "1024"), experiment.threads, assignment, seeded);
+                    break;
+                case "distributed":
+                    algorithm = new DistributedKMeans(experiment.k, locations, seeded,
+                            WireProtocol.valueOf(config.getProperty("wire", "BINARY").toUpperCase(Locale.ROOT)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown mode: " + experiment.mode);
+            }
+
+            long start = System.nanoTime();
+            algorithm.fit();
+            run.wallMillis = (System.nanoTime() - start) / 1_000_000.0;
+            run.iterations = algorithm.getIterations();
+            run.stats = algorithm.getStats();
+            run.inertia = inertia(locations, algorithm.getLabels(), algorithm.getCentroids());
+        } catch (RuntimeException e) {
+            run.error = String.valueOf(e.getMessage());
+        } finally {
+            if (algorithm != null) {
+                algorithm.shutdown();
+            }
+        }
+    }
+
+    //sum of squared distances of every point to the centroid of its cluster
+    static double inertia(LocationStore locations, int[] labels, Location[] centroids) {
+        double inertia = 0;
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] >= 0) {
+                double distance = locations.distance(i, centroids[labels[i]]);
+                inertia += distance * distance;
+            }
+        }
+        return inertia;
+    }
+
+    //points of one size are loaded once, every run copies them so assignments never collide
+    private LocationStore store(int points) {
+        synchronized (stores) {
+            return stores.computeIfAbsent(points, size -> {
+                LocationStore store = new LocationStore(size);
+                Location.loadLocations(Location.DATA_FILE, store, size, Runtime.getRuntime().availableProcessors());
+                return store;
+            });
+        }
+    }
+
+    public void write(Path output) throws IOException {
+        //rows come back from the pool out of order, files list them in matrix order
+        List<Run> sorted = new ArrayList<>(runs);
+        sorted.sort((a, b) -> a.experiment.index != b.experiment.index
+                ? Integer.compare(a.experiment.index, b.experiment.index) : Integer.compare(a.repetition, b.repetition));
+
+        Path csv = output.resolveSibling(output.getFileName() + ".csv");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8))) {
+            writer.println(String.join(",", COLUMNS));
+            for (Run run : sorted) {
+                writer.println(row(run));
+            }
+        }
+
+        JsonArrayBuilder array = Json.createArrayBuilder();
+        for (Run run : sorted) {
+            Experiment experiment = run.experiment;
+            JsonObjectBuilder object = Json.createObjectBuilder()
+                    .add("mode", experiment.mode)
+                    .add("points", experiment.points)
+                    .add("k", experiment.k)
+                    .add("seed", experiment.seed)
+                    .add("threads", experiment.threads)
+                    .add("assignment", config.getProperty("assignment", "STANDARD"))
+                    .add("init", config.getProperty("init", "random"))
+                    .add("repetition", run.repetition)
+                    .add("wallMillis", run.wallMillis)
+                    .add("iterations", run.iterations);
+            if (run.stats != null) {
+                object.add("converged", run.stats.isConverged())
+                        .add("assignMillis", run.stats.assignNanos() / 1e6)
+                        .add("reduceMillis", run.stats.reduceNanos() / 1e6)
+                        .add("networkMillis", run.stats.networkNanos() / 1e6)
+                        .add("serializationMillis", run.stats.serializationNanos() / 1e6)
+                        .add("bytesSent", run.stats.bytesSent());
+                if (run.stats.getStopReason() != null) {
+                    object.add("stopReason", run.stats.getStopReason());
+                }
+            }
+            object.add("inertia", run.inertia);
+            if (!run.error.isEmpty()) {
+                object.add("error", run.error);
+            }
+            array.add(object);
+        }
+        Path json = output.resolveSibling(output.getFileName() + ".json");
+        try {
+            Files.writeString(json, array.build().toString(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + json, e);
+        }
+        System.out.println("Results in " + csv + " and " + json);
+    }
+
+    private String row(Run run) {
+        Experiment experiment = run.experiment;
+        return String.join(",", experiment.mode, Integer.toString(experiment.points), Integer.toString(experiment.k),
+                Long.toString(experiment.seed), Integer.toString(experiment.threads), config.getProperty("assignment", "STANDARD"),
+                config.getProperty("init", "random"), Integer.toString(run.repetition), String.format(Locale.ROOT, "%.3f", run.wallMillis),
+                Integer.toString(run.iterations), statsColumns(run.stats), String.format(Locale.ROOT, "%.6f", run.inertia),
+                run.error.replace(',', ';').replace('\n', ' '));
+    }
+
+    //converged and the phase totals, empty when the fit failed
+    private static String statsColumns(FitStats stats) {
+        if (stats == null) {
+            return ",,,,,";
+        }
+        return String.format(Locale.ROOT, "%b,%.3f,%.3f,%.3f,%.3f,%d", stats.isConverged(), stats.assignNanos() / 1e6,
+                stats.reduceNanos() / 1e6, stats.networkNanos() / 1e6, stats.serializationNanos() / 1e6, stats.bytesSent());
+    }
+
+    private List<String> list(String key, String fallback) {
+        List<String> values = new ArrayList<>();
+        for (String value : config.getProperty(key, fallback).split(",")) {
+            if (!value.isBlank()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    private int intOf(String key, String fallback) {
+        return Integer.parseInt(config.getProperty(key, fallback).trim());
+    }
+}
@@ -0,0 +1,22 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class BinaryFrame {
+    private final byte command;
+    private final int requestId;
+    private final byte[] body;
+
+    public BinaryFrame(byte command, int requestId, byte[] body) {
+        this.command = command;
+        this.requestId = requestId;
+        this.body = body;
+    }
+
+    public byte getCommand() { return command; }
+    public int getRequestId() { return requestId; }
+    public byte[] getBody() { return body; }
+
+    public ByteBuffer bodyBuffer() {
+        return ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
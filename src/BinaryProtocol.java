@@ -0,0 +1,208 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//binary framing used next to the newline JSON protocol on the same port
+//frame: magic(1) command(1) requestId(4) length(4) body(length), all little-endian
+//a text command always starts with a letter, so the first byte tells the peer which protocol is used
+public class BinaryProtocol {
+    public static final byte MAGIC = (byte) 0xB7;
+
+    public static final byte NUMBER = 1;
+    public static final byte KMEANS = 2;
+    public static final byte LOCATION = 3;
+    public static final byte AGGREGATE = 4;
+    public static final byte ATTACH = 5; // body is the path of a ring file, see SharedMemoryConnection
+    public static final byte STATS = 6;  // body reset(1) or empty, answer is the ServerStats JSON
+    public static final byte ERROR = 127;
+
+    public static final int HEADER_SIZE = 10;
+    private static final int TRACE_SIZE = 12; // fit(8) iteration(4) at the end of payloads, older readers ignore it
+    public static final int MAX_BODY = 1 << 30; // largest answer body a client accepts, LOCATION answers grow with the points
+    // requests carry centroids and the aggregation tree, never points: 16 MiB is over 100k centroids even as JSON
+    public static final int MAX_REQUEST = 16 << 20; // largest frame body and longest text line a server accepts
+
+    public static void writeFrame(OutputStream out, BinaryFrame frame) throws IOException {
+        byte[] body = frame.getBody();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).put(frame.getCommand()).putInt(frame.getRequestId()).putInt(body.length);
+
+        out.write(header.array());
+        out.write(body);
+        out.flush();
+    }
+
+    public static BinaryFrame readFrame(InputStream in) throws IOException {
+        return readFrame(in, MAX_BODY);
+    }
+
+    public static BinaryFrame readFrame(InputStream in, int maxBody) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        DataInputStream data = new DataInputStream(in);
+        data.readFully(header);
+
+        ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.get() != MAGIC) {
+            throw new IOException("Not a binary frame");
+        }
+        byte command = buffer.get();
+        int requestId = buffer.getInt();
+        int length = buffer.getInt();
+        if (length < 0 || length > maxBody) {
+            throw new IOException("Bad frame length: " + length);
+        }
+
+        byte[] body = new byte[length];
+        data.readFully(body);
+        return new BinaryFrame(command, requestId, body);
+    }
+
+    public static byte[] encodeNumber(int number) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(number).array();
+    }
+
+    public static int decodeNumber(BinaryFrame frame) {
+        return frame.bodyBuffer().getInt();
+    }
+
+    public static byte[] encodeError(String message) {
+        return message.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static String decodeError(BinaryFrame frame) {
+        return new String(frame.getBody(), StandardCharsets.UTF_8);
+    }
+
+    public static byte[] encodeStats(boolean reset) {
+        return new byte[] {(byte) (reset ? 1 : 0)};
+    }
+
+    public static boolean decodeStatsReset(BinaryFrame frame) {
+        return frame.getBody().length > 0 && frame.getBody()[0] != 0;
+    }
+
+    //dataset(4) start(4) end(4) k(4) then la lo capacity for each centroid, then the trace
+    public static byte[] encodePayload(int datasetId, int start, int end, Location[] centroids) {
+        return encodePayload(datasetId, start, end, centroids, 0, -1);
+    }
+
+    //fitId and iteration only tie the JFR events of peers to the coordinator, 0 = untraced
+    public static byte[] encodePayload(int datasetId, int start, int end, Location[] centroids, long fitId, int iteration) {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + centroids.length * 24 + TRACE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(datasetId).putInt(start).putInt(end).putInt(centroids.length);
+        for (Location centroid : centroids) {
+            buffer.putDouble(centroid.getLa()).putDouble(centroid.getLo()).putDouble(centroid.getCapacity());
+        }
+        buffer.putLong(fitId).putInt(iteration);
+        return buffer.array();
+    }
+
+    private static void readTrace(ByteBuffer buffer, Payload payload) {
+        if (buffer.remaining() >= TRACE_SIZE) {
+            payload.setFitId(buffer.getLong());
+            payload.setIteration(buffer.getInt());
+        }
+    }
+
+    public static Payload decodePayload(BinaryFrame frame) {
+        ByteBuffer buffer = frame.bodyBuffer();
+        Payload payload = new Payload();
+        payload.setDatasetId(buffer.getInt());
+        payload.setStart(buffer.getInt());
+        payload.setEnd(buffer.getInt());
+
+        Location[] centroids = new Location[buffer.getInt()];
+        for (int i = 0; i < centroids.length; i++) {
+            double la = buffer.getDouble();
+            double lo = buffer.getDouble();
+            double capacity = buffer.getDouble();
+            centroids[i] = new Location("Centroid", capacity, la, lo);
+        }
+        payload.setCentroids(centroids);
+        readTrace(buffer, payload);
+        return payload;
+    }
+
+    //k(4) then sum la, sum lo, sum capacity, count for each cluster
+    public static byte[] encodePartials(double[] sums, long[] counts) {
+        int k = counts.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + k * 32).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(k);
+        for (int i = 0; i < k; i++) {
+            buffer.putDouble(sums[i * 3]).putDouble(sums[i * 3 + 1]).putDouble(sums[i * 3 + 2]).putLong(counts[i]);
+        }
+        return buffer.array();
+    }
+
+    //sums and counts as the peer sent them, the coordinator divides after adding all answers
+    public static PartialSums decodePartials(BinaryFrame frame) {
+        ByteBuffer buffer = frame.bodyBuffer();
+        int k = buffer.getInt();
+        double[] sums = new double[k * 3];
+        long[] counts = new long[k];
+        for (int i = 0; i < k; i++) {
+            sums[i * 3] = buffer.getDouble();
+            sums[i * 3 + 1] = buffer.getDouble();
+            sums[i * 3 + 2] = buffer.getDouble();
+            counts[i] = buffer.getLong();
+        }
+        return new PartialSums(sums, counts);
+    }
+
+    //sums into sums[k*3] and counts[k], used by peers merging the partials of their subtree
+    public static void addPartials(BinaryFrame frame, double[] sums, long[] counts) {
+        ByteBuffer buffer = frame.bodyBuffer();
+        int k = buffer.getInt();
+        for (int i = 0; i < k; i++) {
+            sums[i * 3] += buffer.getDouble();
+            sums[i * 3 + 1] += buffer.getDouble();
+            sums[i * 3 + 2] += buffer.getDouble();
+            counts[i] += buffer.getLong();
+        }
+    }
+
+    //dataset(4) k(4) la lo capacity for each centroid, then the tree, the root is the peer receiving it, then the trace
+    public static byte[] encodeAggregate(int datasetId, Location[] centroids, AggregationNode node, long fitId, int iteration) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + centroids.length * 24 + node.encodedSize() + TRACE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(datasetId).putInt(centroids.length);
+        for (Location centroid : centroids) {
+            buffer.putDouble(centroid.getLa()).putDouble(centroid.getLo()).putDouble(centroid.getCapacity());
+        }
+        node.encode(buffer);
+        buffer.putLong(fitId).putInt(iteration);
+        return buffer.array();
+    }
+
+    public static Payload decodeAggregate(BinaryFrame frame) {
+        ByteBuffer buffer = frame.bodyBuffer();
+        Payload payload = new Payload();
+        payload.setDatasetId(buffer.getInt());
+
+        Location[] centroids = new Location[buffer.getInt()];
+        for (int i = 0; i < centroids.length; i++) {
+            double la = buffer.getDouble();
+            double lo = buffer.getDouble();
+            double capacity = buffer.getDouble();
+            centroids[i] = new Location("Centroid", capacity, la, lo);
+        }
+        payload.setCentroids(centroids);
+
+        AggregationNode node = AggregationNode.decode(buffer);
+        payload.setStart(node.getStart());
+        payload.setEnd(node.getEnd());
+        payload.setChildren(node.getChildren());
+        readTrace(buffer, payload);
+        return payload;
+    }
+
+    //body of a LOCATION response, see ClusterLabels.encode
+    public static int[] decodeLabels(BinaryFrame frame) {
+        return ClusterLabels.decode(frame.bodyBuffer());
+    }
+}
@@ -0,0 +1,88 @@
+//assignment step that keeps distance bounds between iterations and skips points that can not change cluster
+//update() is called once per iteration before any assign(), assign() is safe to call from many threads on different points
+public abstract class BoundedAssignment {
+    protected final LocationStore locations;
+    protected final int k;
+
+    protected final double[] centroidLa;
+    protected final double[] centroidLo;
+    protected final double[] centroidCapacity;
+    protected final double[] drift;      // how much each centroid moved since last iteration
+    protected final double[] halfNearest; // half distance from centroid to its nearest other centroid
+
+    protected boolean first = true;
+    private boolean initialized = false;
+
+    protected BoundedAssignment(LocationStore locations, int k) {
+        this.locations = locations;
+        this.k = k;
+        this.centroidLa = new double[k];
+        this.centroidLo = new double[k];
+        this.centroidCapacity = new double[k];
+        this.drift = new double[k];
+        this.halfNearest = new double[k];
+    }
+
+    public static BoundedAssignment create(AssignmentMode mode, LocationStore locations, int k) {
+        switch (mode.resolve(k, locations.size())) {
+            case HAMERLY:
+                return new HamerlyAssignment(locations, k);
+            case ELKAN:
+                return new ElkanAssignment(locations, k);
+            default:
+                return null;
+        }
+    }
+
+    public void update(Location[] centroids) {
+        first = !initialized;
+        initialized = true;
+
+        for (int j = 0; j < k; j++) {
+            double la = centroids[j].getLa();
+            double lo = centroids[j].getLo();
+            double capacity = centroids[j].getCapacity();
+
+            drift[j] = first ? 0 : distance(la, lo, capacity, centroidLa[j], centroidLo[j], centroidCapacity[j]);
+            centroidLa[j] = la;
+            centroidLo[j] = lo;
+            centroidCapacity[j] = capacity;
+        }
+
+        for (int j = 0; j < k; j++) {
+            double nearest = Double.MAX_VALUE;
+            for (int o = 0; o < k; o++) {
+                if (o == j) continue;
+                double d = centroidDistance(j, o);
+                if (d < nearest) {
+                    nearest = d;
+                }
+            }
+            halfNearest[j] = nearest / 2;
+        }
+
+        updateCentroids();
+    }
+
+    //extra per iteration work of concrete bound scheme
+    protected void updateCentroids() {
+    }
+
+    public abstract int assign(int index);
+
+    protected double distanceTo(int index, int centroid) {
+        return distance(locations.getLa(index), locations.getLo(index), locations.getCapacity(index),
+                centroidLa[centroid], centroidLo[centroid], centroidCapacity[centroid]);
+    }
+
+    protected double centroidDistance(int a, int b) {
+        return distance(centroidLa[a], centroidLo[a], centroidCapacity[a], centroidLa[b], centroidLo[b], centroidCapacity[b]);
+    }
+
+    private static double distance(double la1, double lo1, double capacity1, double la2, double lo2, double capacity2) {
+        double latDiff = la1 - la2;
+        double lonDiff = lo1 - lo2;
+        double capacityDiff = capacity1 - capacity2;
+        return Math.sqrt(latDiff * latDiff + lonDiff * lonDiff + capacityDiff * capacityDiff);
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.Random;
+
+//picks starting centroids, every centroid gets its own random #RRGGBB color
+public interface CentroidInitializer {
+    Location[] initialize(LocationStore locations, int k, Random random);
+
+    static CentroidInitializer fromChoice(int choice) {
+        switch (choice) {
+            case 1: return new KMeansPlusPlusInitializer();
+            case 2: return new KMeansParallelInitializer();
+            default: return new RandomInitializer();
+        }
+    }
+
+    static CentroidInitializer fromName(String name) {
+        switch (name.toLowerCase()) {
+            case "plusplus":
+            case "k-means++":
+                return new KMeansPlusPlusInitializer();
+            case "parallel":
+            case "k-means||":
+                return new KMeansParallelInitializer();
+            default:
+                return new RandomInitializer();
+        }
+    }
+
+    static Location centroid(LocationStore locations, int index, Random random) {
+        return new Location("Centroid", locations.getCapacity(index), locations.getLa(index), locations.getLo(index), randomColor(random));
+    }
+
+    static String randomColor(Random random) {
+        int red = random.nextInt(256);
+        int green = random.nextInt(256);
+        int blue = random.nextInt(256);
+
+        // format for make random color #RRGGBB
+        return String.format("#%02X%02X%02X", red, green, blue);
+    }
+
+    static double squaredDistance(LocationStore locations, int a, int b) {
+        double latDiff = locations.getLa(a) - locations.getLa(b);
+        double lonDiff = locations.getLo(a) - locations.getLo(b);
+        double capacityDiff = locations.getCapacity(a) - locations.getCapacity(b);
+        return latDiff * latDiff + lonDiff * lonDiff + capacityDiff * capacityDiff;
+    }
+}
@@ -3,23 +3,33 @@ import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 
 public class ClosestPointTask implements Runnable {
-    private final List<Location> locationsSubset;
+    private final LocationStore locations;
+    private final int start;
+    private final int end;
     private final Location[] centroids;
     private final CyclicBarrier barrier;
     private final List<List<PartialCentroid>> matrix;
+    private final BoundedAssignment bounds;
 
-    public ClosestPointTask(List<Location> locationsSubset, Location[] centroids, CyclicBarrier barrier, List<List<PartialCentroid>> matrix) {
-        this.locationsSubset = locationsSubset;
+    public ClosestPointTask(LocationStore locations, int start, int end, Location[] centroids, CyclicBarrier barrier, List<List<PartialCentroid>> matrix) {
+        this(locations, start, end, centroids, barrier, matrix, null);
+    }
+
+    public ClosestPointTask(LocationStore locations, int start, int end, Location[] centroids, CyclicBarrier barrier, List<List<PartialCentroid>> matrix, BoundedAssignment bounds) {
+        this.bounds = bounds;
+        this.locations = locations;
+        this.start = start;
+        this.end = end;
         this.centroids = centroids;
         this.barrier = barrier;
         this.matrix = matrix;
     }
 
-    private int findClosestCentroid(Location loc) {
+    private int findClosestCentroid(int index) {
         double minDist = Double.MAX_VALUE;
         int closest = 0;
         for (int i = 0; i < centroids.length; i++) {
-            double dist = loc.distance(centroids[i]);
+            double dist = locations.distance(index, centroids[i]);
             if (dist < minDist) {
                 minDist = dist;
                 closest = i;
@@ -28,43 +38,43 @@ public class ClosestPointTask implements Runnable {
         return closest;
     }
 
-    private Location calculateCentroid(List<Location> cluster, String color) {
-        double sumLa = 0, sumLo = 0, sumCapacity = 0;
-        for (Location location : cluster) {
-            sumLa += location.getLa();
-            sumLo += location.getLo();
-            sumCapacity += location.getCapacity();
-        }
-
-        int size = cluster.size();
+    private Location calculateCentroid(double sumLa, double sumLo, double sumCapacity, int size) {
         if (size == 0) {
-            return new Location("Centroid", 0, 0, 0, color);
+            return new Location("Centroid", 0, 0, 0);
         }
 
-        return new Location("Centroid", sumCapacity / size, sumLa / size, sumLo / size, color);
+        return new Location("Centroid", sumCapacity / size, sumLa / size, sumLo / size);
     }
 
     @Override
     public void run() {
-        List<List<Location>> clusters = new java.util.ArrayList<>();
-        for (int i = 0; i < centroids.length; i++) {
-            clusters.add(new java.util.ArrayList<>());
-        }
+        int k = centroids.length;
+        double[] sumLa = new double[k];
+        double[] sumLo = new double[k];
+        double[] sumCapacity = new double[k];
+        int[] counts = new int[k];
+
+        double[] la = locations.la();
+        double[] lo = locations.lo();
+        double[] capacity = locations.capacity();
 
-        // Dodeli tačke najbližem centroidu i postavi boju
-        for (Location loc : locationsSubset) {
-            int closest = findClosestCentroid(loc);
-            loc.setColor(centroids[closest].getColor());
-            clusters.get(closest).add(loc);
+        // Dodeli tačke najbližem centroidu i zapamti klaster
+        for (int p = start; p < end; p++) {
+            int closest = bounds != null ? bounds.assign(p) : findClosestCentroid(p);
+            locations.setAssignment(p, closest);
+
+            sumLa[closest] += la[p];
+            sumLo[closest] += lo[p];
+            sumCapacity[closest] += capacity[p];
+            counts[closest]++;
         }
 
         // Izračunaj delimične centre za svaki klaster i dodaj ih u matrix
-        for (int i = 0; i < centroids.length; i++) {
-            Location partialCentroid = calculateCentroid(clusters.get(i), centroids[i].getColor());
-            int count = clusters.get(i).size();
+        for (int i = 0; i < k; i++) {
+            Location partialCentroid = calculateCentroid(sumLa[i], sumLo[i], sumCapacity[i], counts[i]);
 
             // sinhronizacija na nivou liste u matrix (koja je Collections.synchronizedList)
-            matrix.get(i).add(new PartialCentroid(partialCentroid, count));
+            matrix.get(i).add(new PartialCentroid(partialCentroid, counts[i]));
         }
 
         try {
@@ -73,4 +83,4 @@ public class ClosestPointTask implements Runnable {
             Thread.currentThread().interrupt();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+//final recolor round: peers return only the cluster id of every point in their range,
+//the coordinator already has the points and takes colors from its own centroids
+public class ClusterLabels {
+    private static final int RUN_LENGTH = 0x80;
+
+    //assign range against centroids and return the ids, the store is only read, so a shared dataset is safe
+    public static int[] assign(LocationStore locations, int start, int end, Location[] centroids, DistanceKernel kernel) {
+        double[] centroidData = new double[centroids.length * 3];
+        for (int i = 0; i < centroids.length; i++) {
+            centroidData[i * 3] = centroids[i].getLa();
+            centroidData[i * 3 + 1] = centroids[i].getLo();
+            centroidData[i * 3 + 2] = centroids[i].getCapacity();
+        }
+
+        int[] labels = new int[end - start];
+        kernel.assign(locations.la(), locations.lo(), locations.capacity(), start, end, centroidData, labels, start);
+        return labels;
+    }
+
+    public static void apply(LocationStore locations, int start, int[] labels) {
+        for (int j = 0; j < labels.length; j++) {
+            locations.setAssignment(start + j, labels[j]);
+        }
+    }
+
+    //flags(1) count(4) then labels, flags = width in bytes (1, 2 or 4) | RUN_LENGTH
+    //run length body is runs(4) then (label, length(4)) pairs, used when it is smaller
+    public static byte[] encode(int[] labels) {
+        int width = widthOf(labels);
+        int runs = runsOf(labels);
+        boolean runLength = runs * (width + 4L) + 4 < (long) labels.length * width;
+
+        int bodySize = runLength ? 4 + runs * (width + 4) : labels.length * width;
+        ByteBuffer buffer = ByteBuffer.allocate(5 + bodySize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) (width | (runLength ? RUN_LENGTH : 0))).putInt(labels.length);
+
+        if (runLength) {
+            buffer.putInt(runs);
+            int i = 0;
+            while (i < labels.length) {
+                int j = i + 1;
+                while (j < labels.length && labels[j] == labels[i]) j++;
+                put(buffer, width, labels[i]);
+                buffer.putInt(j - i);
+                i = j;
+            }
+        } else {
+            for (int label : labels) {
+                put(buffer, width, label);
+            }
+        }
+        return buffer.array();
+    }
+
+    public static int[] decode(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int flags = buffer.get() & 0xFF;
+        int width = flags & ~RUN_LENGTH;
+        int[] labels = new int[buffer.getInt()];
+
+        if ((flags & RUN_LENGTH) != 0) {
+            int runs = buffer.getInt();
+            int position = 0;
+            for (int r = 0; r < runs; r++) {
+                int label = get(buffer, width);
+                int length = buffer.getInt();
+                for (int j = 0; j < length; j++) {
+                    labels[position++] = label;
+                }
+            }
+        } else {
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = get(buffer, width);
+            }
+        }
+        return labels;
+    }
+
+    public static int[] decode(byte[] body) {
+        return decode(ByteBuffer.wrap(body));
+    }
+
+    //{"labels":[...]} or {"runs":[label, length, ...]} for the text protocol
+    public static String toJson(int[] labels) {
+        JsonArrayBuilder array = Json.createArrayBuilder();
+        boolean runLength = runsOf(labels) * 2 < labels.length;
+        if (runLength) {
+            int i = 0;
+            while (i < labels.length) {
+                int j = i + 1;
+                while (j < labels.length && labels[j] == labels[i]) j++;
+                array.add(labels[i]).add(j - i);
+                i = j;
+            }
+        } else {
+            for (int label : labels) {
+                array.add(label);
+            }
+        }
+
+        return Json.createObjectBuilder()
+                .add("count", labels.length)
+                .add(runLength ? "runs" : "labels", array)
+                .build()
+                .toString();
+    }
+
+    public static int[] fromJson(String json) {
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            JsonObject root = reader.readObject();
+            int[] labels = new int[root.getInt("count")];
+
+            if (root.containsKey("runs")) {
+                JsonArray runs = root.getJsonArray("runs");
+                int position = 0;
+                for (int r = 0; r < runs.size(); r += 2) {
+                    int label = runs.getInt(r);
+                    int length = runs.getInt(r + 1);
+                    for (int j = 0; j < length; j++) {
+                        labels[position++] = label;
+                    }
+                }
+            } else {
+                JsonArray array = root.getJsonArray("labels");
+                for (int i = 0; i < labels.length; i++) {
+                    labels[i] = array.getInt(i);
+                }
+            }
+            return labels;
+        }
+    }
+
+    private static int widthOf(int[] labels) {
+        int width = 1;
+        for (int label : labels) {
+            if (label < Byte.MIN_VALUE || label > Byte.MAX_VALUE) width = Math.max(width, 2);
+            if (label < Short.MIN_VALUE || label > Short.MAX_VALUE) return 4;
+        }
+        return width;
+    }
+
+    private static int runsOf(int[] labels) {
+        int runs = 0;
+        for (int i = 0; i < labels.length; i++) {
+            if (i == 0 || labels[i] != labels[i - 1]) runs++;
+        }
+        return runs;
+    }
+
+    private static void put(ByteBuffer buffer, int width, int label) {
+        switch (width) {
+            case 1: buffer.put((byte) label); break;
+            case 2: buffer.putShort((short) label); break;
+            default: buffer.putInt(label); break;
+        }
+    }
+
+    private static int get(ByteBuffer buffer, int width) {
+        switch (width) {
+            case 1: return buffer.get();
+            case 2: return buffer.getShort();
+            default: return buffer.getInt();
+        }
+    }
+}
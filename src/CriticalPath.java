@@ -0,0 +1,136 @@
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+//critical path of every distributed iteration from the JFR recordings of the coordinator and the peers
+//record with: java -XX:StartFlightRecording:filename=coordinator.jfr ... on the coordinator and every peer
+//usage: CriticalPath coordinator.jfr [peer.jfr ...], a single recording is enough when the peers run in the same JVM
+//the critical request is the one answered last, its time is split into phases; only durations of peer
+//events are used, never their timestamps, so clocks of the machines do not have to agree
+public class CriticalPath {
+    private static final String[] PHASES = {"dispatch", "encode", "network", "queue", "peerDecode", "compute",
+            "peerEncode", "decode", "reduce", "other"};
+
+    private static class Iteration {
+        RecordedEvent event;
+        final List<RecordedEvent> requests = new ArrayList<>();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: CriticalPath recording.jfr [recording.jfr ...]");
+            return;
+        }
+
+        Map<String, Iteration> iterations = new TreeMap<>();
+        Map<String, RecordedEvent> peerRequests = new HashMap<>();
+        for (String file : args) {
+            for (RecordedEvent event : RecordingFile.readAllEvents(Path.of(file))) {
+                switch (event.getEventType().getName()) {
+                    case "kmeans.Iteration":
+                        iterations.computeIfAbsent(key(event), ignored -> new Iteration()).event = event;
+                        break;
+                    case "kmeans.PartitionRequest":
+                        iterations.computeIfAbsent(key(event), ignored -> new Iteration()).requests.add(event);
+                        break;
+                    case "kmeans.PeerRequest":
+                        //a speculative resend is handled twice, the slower one is the one that could hold the iteration back
+                        peerRequests.merge(key(event) + "/" + event.getInt("partition"), event,
+                                (a, b) -> a.getDuration().compareTo(b.getDuration()) >= 0 ? a : b);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        long[] totals = new long[PHASES.length];
+        long wall = 0;
+        int count = 0;
+        Map<String, Integer> criticalPeers = new LinkedHashMap<>();
+        for (Iteration iteration : iterations.values()) {
+            if (iteration.event == null || iteration.requests.isEmpty()) {
+                continue; // LOCATION round or a recording that started mid-iteration
+            }
+
+            RecordedEvent critical = iteration.requests.get(0);
+            for (RecordedEvent request : iteration.requests) {
+                if (request.getEndTime().isAfter(critical.getEndTime())) {
+                    critical = request;
+                }
+            }
+            RecordedEvent peer = peerRequests.get(key(critical) + "/" + critical.getInt("partition"));
+
+            long[] phases = phases(iteration.event, critical, peer);
+            for (int i = 0; i < phases.length; i++) {
+                totals[i] += phases[i];
+            }
+            long nanos = iteration.event.getDuration().toNanos();
+            wall += nanos;
+            count++;
+            criticalPeers.merge(critical.getString("peer"), 1, Integer::sum);
+
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "fit %d #%d %.3f ms, critical %s %s [%d, %d)%s:",
+                    critical.getLong("fitId"), critical.getInt("iteration"), nanos / 1e6, critical.getString("command"),
+                    critical.getString("peer"), critical.getInt("partition"), critical.getInt("partitionEnd"),
+                    peer == null ? " (no peer event)" : ""));
+            for (int i = 0; i < PHASES.length; i++) {
+                line.append(String.format(Locale.ROOT, " %s %.3f", PHASES[i], phases[i] / 1e6));
+            }
+            System.out.println(line);
+        }
+
+        if (count == 0) {
+            System.out.println("No traced iterations, was the coordinator recording?");
+            return;
+        }
+        System.out.println(String.format(Locale.ROOT, "%d iterations, %.3f ms", count, wall / 1e6));
+        for (int i = 0; i < PHASES.length; i++) {
+            System.out.println(String.format(Locale.ROOT, "  %-10s %10.3f ms %5.1f%%", PHASES[i], totals[i] / 1e6, 100.0 * totals[i] / wall));
+        }
+        criticalPeers.forEach((peer, times) -> System.out.println("  critical " + times + "x " + peer));
+    }
+
+    private static String key(RecordedEvent event) {
+        return event.getLong("fitId") + "/" + String.format("%06d", event.getInt("iteration"));
+    }
+
+    //nanos per phase, without a peer event the whole round trip is network
+    private static long[] phases(RecordedEvent iteration, RecordedEvent request, RecordedEvent peer) {
+        long[] phases = new long[PHASES.length];
+        long encode = request.getLong("encodeNanos");
+        long decode = request.getLong("decodeNanos");
+        long roundTrip = request.getDuration().toNanos();
+
+        phases[0] = Math.max(0, Duration.between(iteration.getStartTime(), request.getStartTime()).toNanos() - encode);
+        phases[1] = encode;
+        long atPeer = 0;
+        if (peer != null) {
+            phases[3] = peer.getLong("queueNanos");
+            phases[4] = peer.getLong("decodeNanos");
+            phases[5] = peer.getLong("computeNanos");
+            phases[6] = peer.getLong("encodeNanos");
+            atPeer = phases[3] + peer.getDuration().toNanos();
+        }
+        phases[2] = Math.max(0, roundTrip - decode - atPeer);
+        phases[7] = decode;
+        phases[8] = iteration.getLong("reduceNanos");
+
+        long accounted = 0;
+        for (int i = 0; i < 9; i++) {
+            accounted += phases[i];
+        }
+        phases[9] = Math.max(0, iteration.getDuration().toNanos() - accounted);
+        return phases;
+    }
+}
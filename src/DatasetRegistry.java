@@ -0,0 +1,47 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//datasets loaded once and kept in memory, keyed by source file and number of locations
+//the id only depends on the key, so every peer loading the same source gives the same id
+public class DatasetRegistry {
+    private final Map<Integer, LocationStore> datasets = new ConcurrentHashMap<>();
+    private final Map<Integer, String> keys = new ConcurrentHashMap<>();
+    private volatile int latest = -1;
+
+    public static int idOf(String source, int size) {
+        return (31 * source.hashCode() + size) & Integer.MAX_VALUE;
+    }
+
+    public int load(String source, int size) {
+        int id = idOf(source, size);
+        String key = source + "#" + size;
+
+        String existing = keys.putIfAbsent(id, key);
+        if (existing != null && !existing.equals(key)) {
+            throw new IllegalStateException("Dataset id " + id + " already used by " + existing);
+        }
+
+        datasets.computeIfAbsent(id, ignored -> {
+            LocationStore store = new LocationStore(size);
+            Location.loadLocations(source, store, size, Runtime.getRuntime().availableProcessors());
+            return store;
+        });
+
+        latest = id;
+        return id;
+    }
+
+    //-1 is the last loaded dataset, for clients that do not send an id
+    public LocationStore get(int id) {
+        LocationStore store = datasets.get(id == -1 ? latest : id);
+        if (store == null) {
+            throw new IllegalArgumentException("Unknown dataset: " + id);
+        }
+        return store;
+    }
+
+    public void remove(int id) {
+        datasets.remove(id);
+        keys.remove(id);
+    }
+}
@@ -0,0 +1,20 @@
+//assigns a block of points to the closest centroid using squared distances, centroids are k * 3 (la, lo, capacity)
+public interface DistanceKernel {
+    default void assign(double[] la, double[] lo, double[] capacity, int start, int end, double[] centroids, int[] assignment) {
+        assign(la, lo, capacity, start, end, centroids, assignment, 0);
+    }
+
+    //label of point p goes to assignment[p - offset], so a buffer of end - start labels can take a range
+    void assign(double[] la, double[] lo, double[] capacity, int start, int end, double[] centroids, int[] assignment, int offset);
+
+    static DistanceKernel create(AssignmentMode mode) {
+        if (mode == AssignmentMode.VECTOR) {
+            try {
+                return new VectorDistanceKernel();
+            } catch (LinkageError e) {
+                // jdk.incubator.vector nije dodat sa --add-modules, racuna se skalarno
+            }
+        }
+        return new ScalarDistanceKernel();
+    }
+}
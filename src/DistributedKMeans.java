@@ -1,35 +1,56 @@
 import javax.json.*;
 import java.io.IOException;
 import java.io.StringReader;
-import java.security.spec.RSAOtherPrimeInfo;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 public class DistributedKMeans implements KMeansAlgorithm {
+    private static final int PIPELINE_DEPTH = 2; // KMEANS requests in flight per server
+    private static final int TREE_FANOUT = 2;
+    // every peer of the tree needs -Dkmeans.peers with the others, a peer only forwards to those
+    private final boolean treeAggregation = "tree".equals(System.getProperty("kmeans.aggregation"));
     private final Random random = new Random(12345L); // fiksni seed
-    private final List<Location> locations;
+    private final LocationStore locations;
     private Location[] centroids;
+    private final String[] palette;
+    private int iterations;
+    private final WireProtocol protocol;
+    private volatile int datasetId = -1; // resident dataset on peers, returned by NUMBER
+    private final FitTracker tracker = new FitTracker("DistributedKMeans");
+    private long fitId; // goes with every request, JFR events of the peers are matched to this fit by it
 
     private final DistributedKMeansClient networkCluster = new DistributedKMeansClient(
             new String[] { "127.0.0.1", },
             new int[]    { 7777 }
     );
 
-    public DistributedKMeans(int k, List<Location> locations) {
-        this.locations = locations;
-        this.centroids = new Location[k];
+    public DistributedKMeans(int k, LocationStore locations) {
+        this(k, locations, new RandomInitializer());
+    }
 
-        for (int i = 0; i < k; i++) {
-            this.centroids[i] = locations.get(random.nextInt(locations.size()));
-            this.centroids[i].setColor(generateRandomColor());
-        }
+    public DistributedKMeans(int k, LocationStore locations, CentroidInitializer initializer) {
+        this(k, locations, initializer, WireProtocol.JSON);
+    }
+
+    public DistributedKMeans(int k, LocationStore locations, CentroidInitializer initializer, WireProtocol protocol) {
+        this.locations = locations;
+        this.protocol = protocol;
+        this.centroids = initializer.initialize(locations, k, random);
+        this.palette = Palette.of(centroids);
     }
 
     public void  shutdown(){
 
     }
 
-    private String createJsonPayload(int start, int end, Location[] centroidsList) {
+    static String createJsonPayload(int datasetId, int start, int end, Location[] centroidsList) {
+        return createJsonPayload(datasetId, start, end, centroidsList, 0, -1);
+    }
+
+    static String createJsonPayload(int datasetId, int start, int end, Location[] centroidsList, long fitId, int iteration) {
         JsonArrayBuilder centroidsBuilder = Json.createArrayBuilder();
         for (Location centroid : centroidsList) {
             JsonObject centroidJson = Json.createObjectBuilder()
@@ -37,18 +58,20 @@ public class DistributedKMeans implements KMeansAlgorithm {
                     .add("capacity", centroid.getCapacity())
                     .add("la", centroid.getLa())
                     .add("lo", centroid.getLo())
-                    .add("color", centroid.getColor())
                     .build();
             centroidsBuilder.add(centroidJson);
         }
 
-        JsonObject jsonPayload = Json.createObjectBuilder()
+        JsonObjectBuilder jsonPayload = Json.createObjectBuilder()
+                .add("dataset", datasetId)
                 .add("start", start)
                 .add("end", end)
-                .add("centroids", centroidsBuilder)
-                .build();
+                .add("centroids", centroidsBuilder);
+        if (fitId != 0) {
+            jsonPayload.add("fit", fitId).add("iteration", iteration);
+        }
 
-        return jsonPayload.toString();
+        return jsonPayload.build().toString();
     }
 
 
@@ -61,106 +84,130 @@ public class DistributedKMeans implements KMeansAlgorithm {
             return;
         }
 
+        tracker.start(locations.size(), centroids.length);
+        fitId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
         String jsonPayload = Integer.toString(locations.size()); // Broj lokacija koje želiš da server učita
 
-        ExecutorService executor = Executors.newCachedThreadPool();
-        CountDownLatch latch = new CountDownLatch(serverCount);
-
+        // svaki server mora da ucita podatke, inace bi kasnije dobijao zahteve za skup koji nema
+        List<CompletableFuture<Integer>> loads = new ArrayList<>();
         for (int i = 0; i < serverCount; i++) {
-            executor.submit(() -> {
-                try {
-                    networkCluster.sendCommandAndReceiveResponse("NUMBER", jsonPayload);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                } finally {
-                    latch.countDown();
-                }
-            });
-        }
-
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Interrupted while waiting for servers", e);
+            if (protocol == WireProtocol.BINARY) {
+                loads.add(networkCluster.sendBinaryAsync(i, BinaryProtocol.NUMBER, BinaryProtocol.encodeNumber(locations.size()))
+                        .thenApply(BinaryProtocol::decodeNumber));
+            } else {
+                loads.add(networkCluster.sendCommandAsync(i, "NUMBER", jsonPayload).thenApply(DistributedKMeans::parseDatasetId));
+            }
         }
-
-        int partitionSize = (locations.size() + serverCount - 1) / serverCount;
-
-        int counter = 0;
-
+        // peers with different ids loaded different data, their partials can not be added
+        int loadedId = -1;
         for (int i = 0; i < serverCount; i++) {
-            int start = i * partitionSize;
-            int end = Math.min(start + partitionSize, locations.size());
+            int id;
+            try {
+                id = loads.get(i).join();
+            } catch (CompletionException e) {
+                networkCluster.close();
+                throw new RuntimeException("NUMBER failed on " + networkCluster.getAddress(i), e.getCause());
+            }
 
-            if (start >= end) {
-                break;
+            if (loadedId != -1 && loadedId != id) {
+                networkCluster.close();
+                throw new IllegalStateException("Peers loaded different datasets: " + networkCluster.getAddress(0) + " has "
+                        + loadedId + ", " + networkCluster.getAddress(i) + " has " + id);
             }
-            counter++;
+            loadedId = id;
         }
+        datasetId = loadedId;
+
+        // opseg svakog servera se prilagodjava njegovoj izmerenoj brzini (tacaka po ms)
+        int partitionCount = serverCount * PIPELINE_DEPTH;
+        AdaptivePartitioner partitioner = new AdaptivePartitioner(serverCount, locations.size());
 
         int maxIterations = 100;
+        boolean converged = false;
         for (int iter = 0; iter < maxIterations; iter++) {
-            CountDownLatch latch2 = new CountDownLatch(counter);
-            List<List<PartialCentroid>> matrix = new ArrayList<>();
-            for (int i = 0; i < centroids.length; i++) {
-                matrix.add(Collections.synchronizedList(new ArrayList<>()));
-            }
-
-            for (int i = 0; i < serverCount; i++) {
-                int start = i * partitionSize;
-                int end = Math.min(start + partitionSize, locations.size());
-                if (start >= end) {break;}
-
-                //for (int k = 0; k < centroids.length; k++){
-                //    System.out.println(centroids[k].getCapacity() + " " + centroids[k].getLa());
-               // }
-               // System.out.println(centroids.length);
-
-                String jsonPayload2 = createJsonPayload(start, end, centroids);
-
-
-
-                executor.submit(() -> {
-                    try {
-                        String response = networkCluster.sendCommandAndReceiveResponse("KMEANS", jsonPayload2);
-                        List<PartialCentroid> partials = parsePartialCentroids(response);
-
-                        for (int k = 0; k < partials.size(); k++) {
-                            matrix.get(k).add(partials.get(k));
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    } finally {
-                        try {
-                            //System.out.println("check");
-                            latch2.countDown();  //
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
-                        }
+            iterations = iter + 1;
+            long sendStart = tracker.startIteration();
+            IterationEvent iterationEvent = new IterationEvent();
+            iterationEvent.begin();
+            int iteration = iter;
+            long encodeNanos = 0;
+            LongAdder decodeNanos = new LongAdder(); // reader threads decode the replies
+            LongAdder bytesSent = new LongAdder();   // payload bytes, a speculative resend counts again
+            List<CompletableFuture<Void>> responses = new ArrayList<>();
+            double[] sums = new double[centroids.length * 3]; // answers are added under sums lock as they come
+            long[] counts = new long[centroids.length];
+
+            if (treeAggregation) {
+                // jedan zahtev korenu stabla, svaki cvor sabira parcijale svoje dece pre odgovora
+                AggregationNode root = AggregationNode.tree(networkCluster.getHosts(), networkCluster.getPorts(), partitioner, TREE_FANOUT);
+                long encodeStart = System.nanoTime();
+                byte[] body = BinaryProtocol.encodeAggregate(datasetId, centroids, root, fitId, iteration);
+                long encoded = System.nanoTime() - encodeStart;
+                encodeNanos += encoded;
+                bytesSent.add(body.length);
+                PartitionRequestEvent trace = PartitionRequestEvent.start(fitId, iteration, 0, locations.size(),
+                        networkCluster.getAddress(0), "AGGREGATE", encoded, body.length);
+                responses.add(networkCluster.sendBinaryAsync(0, BinaryProtocol.AGGREGATE, body)
+                        .thenApply(timed(BinaryProtocol::decodePartials, decodeNanos, trace, DistributedKMeans::frameSize))
+                        .thenAccept(partials -> add(partials, sums, counts)));
+            } else {
+                for (int i = 0; i < partitionCount; i++) {
+                    int host = i / PIPELINE_DEPTH;
+                    int start = partitionStart(partitioner, i);
+                    int end = partitionStart(partitioner, i + 1);
+                    if (start >= end) {continue;}
+                    long sent = System.nanoTime();
+
+                    // zahtevi se salju odmah, vise njih ide istom konekcijom bez cekanja odgovora
+                    // spor ili pao peer: isti zahtev ide jos jednom drugom peeru, prvi odgovor se uzima
+                    CompletableFuture<PartialSums> partialsFuture;
+                    long encodeStart = System.nanoTime();
+                    if (protocol == WireProtocol.BINARY) {
+                        byte[] body = BinaryProtocol.encodePayload(datasetId, start, end, centroids, fitId, iteration);
+                        long encoded = System.nanoTime() - encodeStart;
+                        encodeNanos += encoded;
+                        partialsFuture = networkCluster.sendSpeculative(host, peer -> {
+                            bytesSent.add(body.length);
+                            PartitionRequestEvent trace = PartitionRequestEvent.start(fitId, iteration, start, end,
+                                    networkCluster.getAddress(peer), "KMEANS", encoded, body.length);
+                            return recordOwn(networkCluster.sendBinaryAsync(peer, BinaryProtocol.KMEANS, body)
+                                    .thenApply(timed(BinaryProtocol::decodePartials, decodeNanos, trace, DistributedKMeans::frameSize)),
+                                    peer, host, partitioner, end - start, sent);
+                        });
+                    } else {
+                        String json = createJsonPayload(datasetId, start, end, centroids, fitId, iteration);
+                        long encoded = System.nanoTime() - encodeStart;
+                        encodeNanos += encoded;
+                        partialsFuture = networkCluster.sendSpeculative(host, peer -> {
+                            bytesSent.add(json.length()); // ASCII only
+                            PartitionRequestEvent trace = PartitionRequestEvent.start(fitId, iteration, start, end,
+                                    networkCluster.getAddress(peer), "KMEANS", encoded, json.length());
+                            return recordOwn(networkCluster.sendCommandAsync(peer, "KMEANS", json)
+                                    .thenApply(timed(DistributedKMeans::parsePartialSums, decodeNanos, trace, String::length)),
+                                    peer, host, partitioner, end - start, sent);
+                        });
                     }
-                });
-            }
 
-            try {
-                latch2.await();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Interrupted while waiting for servers", e);
+                    responses.add(partialsFuture.thenAccept(partials -> add(partials, sums, counts)));
+                }
             }
+
+            awaitAll(responses, "KMEANS iteration " + iter);
+            long reduceStart = System.nanoTime();
+            partitioner.rebalance();
             boolean changed = false;
+            double shift = 0;
             Location[] newCentroids = new Location[centroids.length];
 
 
             for (int i = 0; i < centroids.length; i++) {
                 Location oldCentroid = centroids[i];
-                Location newCentroid = calculateWeightedCentroid(matrix.get(i), oldCentroid.getColor());
-
-               // System.out.println(newCentroid.getCapacity());
+                Location newCentroid = mean(sums, counts, i);
 
                 if (!areEqual(oldCentroid, newCentroid)) {
                     changed = true;
                 }
+                shift = Math.max(shift, oldCentroid.distance(newCentroid));
 
                 newCentroids[i] = newCentroid;
 
@@ -168,8 +215,22 @@ public class DistributedKMeans implements KMeansAlgorithm {
 
             centroids = newCentroids;
 
+            // dodela je na peerovima, njeno vreme je u mrezi, a labele ovde ne vidimo
+            long serializationNanos = encodeNanos + decodeNanos.sum();
+            long reduceNanos = System.nanoTime() - reduceStart;
+            tracker.iteration(iter, 0, reduceNanos, Math.max(0, reduceStart - sendStart - serializationNanos),
+                    serializationNanos, -1, shift, Double.NaN, bytesSent.sum());
+            iterationEvent.end();
+            if (iterationEvent.shouldCommit()) {
+                iterationEvent.fitId = fitId;
+                iterationEvent.iteration = iter;
+                iterationEvent.requests = responses.size();
+                iterationEvent.reduceNanos = reduceNanos;
+                iterationEvent.bytesSent = bytesSent.sum();
+                iterationEvent.commit();
+            }
             if (!changed) {
-                System.out.println("Konvergencija postignuta nakon " + iter + " iteracija.");
+                converged = true;
                 break;
             }
         }
@@ -177,84 +238,134 @@ public class DistributedKMeans implements KMeansAlgorithm {
         //=============================================================
         //recolor
 
-        CountDownLatch latch3 = new CountDownLatch(serverCount);
+        List<CompletableFuture<Void>> recolor = new ArrayList<>();
+
+        for (int i = 0; i < partitionCount; i++) {
+            int host = i / PIPELINE_DEPTH;
+            int start = partitionStart(partitioner, i);
+            int end = partitionStart(partitioner, i + 1);
+            if (start >= end) {continue;}
+
+            // peer vraca samo indekse klastera, boje se postavljaju lokalno
+            // iteration -1: traced, but outside of every iteration
+            CompletableFuture<int[]> labelsFuture;
+            long encodeStart = System.nanoTime();
+            if (protocol == WireProtocol.BINARY) {
+                byte[] body = BinaryProtocol.encodePayload(datasetId, start, end, centroids, fitId, -1);
+                long encoded = System.nanoTime() - encodeStart;
+                labelsFuture = networkCluster.sendSpeculative(host, peer -> {
+                    PartitionRequestEvent trace = PartitionRequestEvent.start(fitId, -1, start, end,
+                            networkCluster.getAddress(peer), "LOCATION", encoded, body.length);
+                    return networkCluster.sendBinaryAsync(peer, BinaryProtocol.LOCATION, body)
+                            .thenApply(timed(BinaryProtocol::decodeLabels, null, trace, DistributedKMeans::frameSize));
+                });
+            } else {
+                String json = createJsonPayload(datasetId, start, end, centroids, fitId, -1);
+                long encoded = System.nanoTime() - encodeStart;
+                labelsFuture = networkCluster.sendSpeculative(host, peer -> {
+                    PartitionRequestEvent trace = PartitionRequestEvent.start(fitId, -1, start, end,
+                            networkCluster.getAddress(peer), "LOCATION", encoded, json.length());
+                    return networkCluster.sendCommandAsync(peer, "LOCATION", json)
+                            .thenApply(timed(ClusterLabels::fromJson, null, trace, String::length));
+                });
+            }
 
-        for (int i = 0; i < serverCount; i++) {
-            int start = i * partitionSize;
-            int end = Math.min(start + partitionSize, locations.size());
-            if (start >= end) {break;}
+            recolor.add(labelsFuture.thenAccept(labels -> ClusterLabels.apply(locations, start, labels)));
+        }
 
-            String jsonPayload2 = createJsonPayload(start, end, centroids);
+        awaitAll(recolor, "LOCATION");
 
-            executor.submit(() -> {
-                try {
-                    String response = networkCluster.sendCommandAndReceiveResponse("LOCATION", jsonPayload2);
-                    List<Location> responseLocations = parseLocations(response);
+        networkCluster.close();
+        tracker.finish(converged);
+    }
 
-                    for (int j = start; j < end; j++ ){
-                        locations.set(j, responseLocations.get(j - start));
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                } finally {
-                    try {
-                        //System.out.println("check");
-                        latch3.countDown();  //
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
+    //decoding happens on the reader thread, its time is added to nanos (if any) and closes the trace of the request
+    private static <T, R> Function<T, R> timed(Function<T, R> decoder, LongAdder nanos, PartitionRequestEvent trace, ToLongFunction<T> size) {
+        return value -> {
+            long start = System.nanoTime();
+            try {
+                return decoder.apply(value);
+            } finally {
+                long took = System.nanoTime() - start;
+                if (nanos != null) {
+                    nanos.add(took);
                 }
-            });
-        }
-
-        try {
-            latch3.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Interrupted while waiting for servers", e);
-        }
-
-        executor.shutdown();
+                if (trace != null) {
+                    trace.finish(size.applyAsLong(value), took);
+                }
+            }
+        };
     }
 
-    public static List<Location> parseLocations(String jsonResponse) {
-        List<Location> locations = new ArrayList<>();
+    private static long frameSize(BinaryFrame frame) {
+        return BinaryProtocol.HEADER_SIZE + frame.getBody().length;
+    }
 
-        try (JsonReader reader = Json.createReader(new StringReader(jsonResponse))) {
-            JsonArray jsonArray = reader.readArray();
+    //random per fit, 0 before the first fit
+    public long getFitId() {
+        return fitId;
+    }
 
-            for (JsonObject obj : jsonArray.getValuesAs(JsonObject.class)) {
-                String name = obj.getString("name");
-                double capacity = obj.getJsonNumber("capacity").doubleValue();
-                double la = obj.getJsonNumber("la").doubleValue();
-                double lo = obj.getJsonNumber("lo").doubleValue();
-                String color = obj.getString("color");
+    //"OK <id>", anything else is the error text of the peer
+    private static int parseDatasetId(String response) {
+        String[] parts = response.trim().split(" ");
+        if (parts.length < 2 || !parts[0].equals("OK")) {
+            throw new IllegalStateException("Peer could not load locations: " + response);
+        }
+        return Integer.parseInt(parts[1]);
+    }
 
-                Location location = new Location(name, capacity, la, lo, color);
-                locations.add(location);
+    //only an answer of the partition's own host is timed, a backup that rescued the partition is not credited to it
+    private static <T> CompletableFuture<T> recordOwn(CompletableFuture<T> attempt, int peer, int host,
+                                                      AdaptivePartitioner partitioner, int points, long sent) {
+        if (peer != host) {
+            return attempt;
+        }
+        return attempt.whenComplete((response, e) -> {
+            if (e == null) {
+                partitioner.record(host, points, (System.nanoTime() - sent) / 1_000_000.0);
             }
+        });
+    }
+
+    //partition i is part (i % PIPELINE_DEPTH) of the range of server (i / PIPELINE_DEPTH)
+    private static int partitionStart(AdaptivePartitioner partitioner, int i) {
+        int host = i / PIPELINE_DEPTH;
+        if (host == partitioner.workers()) {
+            return partitioner.start(host);
         }
 
-        return locations;
+        int hostStart = partitioner.start(host);
+        int length = partitioner.end(host) - hostStart;
+        return hostStart + (int) ((long) length * (i % PIPELINE_DEPTH) / PIPELINE_DEPTH);
     }
 
-    public Location calculateWeightedCentroid(List<PartialCentroid> partials, String color) {
-        double sumLa = 0, sumLo = 0, sumCapacity = 0;
-        int totalCount = 0;
-
-        for (PartialCentroid pc : partials) {
-            sumLa += pc.centroid.getLa() * pc.count;
-            sumLo += pc.centroid.getLo() * pc.count;
-            sumCapacity += pc.centroid.getCapacity() * pc.count;
-            totalCount += pc.count;
+    //a partition that failed on every peer it was sent to fails the fit instead of silently missing from the sums
+    private void awaitAll(List<CompletableFuture<Void>> futures, String round) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            networkCluster.close();
+            throw new RuntimeException(round + " failed on every peer it was sent to", e.getCause());
         }
+    }
 
-        if (totalCount == 0) {
-            return new Location("Centroid", 0, 0, 0, color);
+    //only the answer that won a speculation gets here, so every partition is added once
+    private static void add(PartialSums partials, double[] sums, long[] counts) {
+        synchronized (sums) {
+            partials.addTo(sums, counts);
         }
+    }
 
+    private static Location mean(double[] sums, long[] counts, int i) {
+        if (counts[i] == 0) {
+            return new Location("Centroid", 0, 0, 0);
+        }
+        return new Location("Centroid", sums[i * 3 + 2] / counts[i], sums[i * 3] / counts[i], sums[i * 3 + 1] / counts[i]);
+    }
 
-        return new Location("Centroid", sumCapacity / totalCount, sumLa / totalCount, sumLo / totalCount, color);
+    static PartialSums parsePartialSums(String json) {
+        return PartialSums.fromMeans(parsePartialCentroids(json));
     }
 
     public static List<PartialCentroid> parsePartialCentroids(String json) {
@@ -269,9 +380,8 @@ public class DistributedKMeans implements KMeansAlgorithm {
                 double lo = c.getJsonNumber("lo").doubleValue();
                 double capacity = c.getJsonNumber("capacity").doubleValue();
                 int count = c.getInt("count");
-                String color = c.getString("color");
 
-                Location location = new Location("Centroid", capacity, la, lo, color);
+                Location location = new Location("Centroid", capacity, la, lo);
                 PartialCentroid pc = new PartialCentroid(location, count);
                 list.add(pc);
             }
@@ -288,16 +398,31 @@ public class DistributedKMeans implements KMeansAlgorithm {
     }
 
 
-    private String generateRandomColor() {
-        int r = random.nextInt(256);
-        int g = random.nextInt(256);
-        int b = random.nextInt(256);
-        return String.format("#%02X%02X%02X", r, g, b);
+    @Override
+    public Location[] getCentroids() {
+        return Palette.colored(centroids, palette);
+    }
+
+    public int[] getLabels() {
+        return Arrays.copyOf(locations.assignment(), locations.size());
+    }
+
+    public String[] getPalette() {
+        return palette;
     }
 
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
 
     @Override
-    public Location[] getCentroids() {
-        return centroids;
+    public FitStats getStats() {
+        return tracker.last();
+    }
+
+    @Override
+    public void addListener(FitListener listener) {
+        tracker.addListener(listener);
     }
 }
\ No newline at end of file
@@ -1,36 +1,300 @@
 import java.io.*;
-import java.net.Socket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
+//keeps a small pool of open connections per host for the whole fit, requests are pipelined on them
+//-Dkmeans.transport=shm reaches peers on this host through mapped rings instead of loopback sockets
+//every request has a deadline (-Dkmeans.deadline, ms), a request slower than STRAGGLER_FACTOR times the
+//latency of the fastest peer is sent once more to another peer and the first answer wins
+//close() ends a fit: connections, timer and latencies are dropped, the next request starts them again
 public class DistributedKMeansClient {
+    private static final long DEFAULT_DEADLINE_MS = 30_000;
+    private static final double STRAGGLER_FACTOR = 3.0;
+    private static final long MIN_STRAGGLER_MS = 20;
+    private static final double LATENCY_WEIGHT = 0.2; // ewma, weight of the newest sample
+
     private final String[] host;
     private final int[] port;
     private final AtomicInteger current = new AtomicInteger(0);
+    private final AtomicInteger requestIds = new AtomicInteger(0);
+
+    private final int connectionsPerHost;
+    private final List<List<PeerChannel>> pools = new ArrayList<>();
+    private final boolean[] shared; // host is reached through SharedMemoryConnection
+    private final long deadlineMillis = Long.getLong("kmeans.deadline", DEFAULT_DEADLINE_MS);
+    private final double[] latencyMillis; // ewma per host, 0 = no answer yet
+    private ScheduledExecutorService timer; // straggler backups, created by the first speculation after close()
 
 
     public int getServerCount() {
         return port.length;
     }
 
+    public String[] getHosts() {
+        return host.clone();
+    }
+
+    public int[] getPorts() {
+        return port.clone();
+    }
+
+    //host:port, the name peers are traced under
+    public String getAddress(int hostIndex) {
+        return host[hostIndex] + ":" + port[hostIndex];
+    }
+
     public DistributedKMeansClient(String[] host, int[] port) {
+        this(host, port, 2);
+    }
+
+    public DistributedKMeansClient(String[] host, int[] port, int connectionsPerHost) {
+        this(host, port, connectionsPerHost,
+                "shm".equalsIgnoreCase(System.getProperty("kmeans.transport")) ? Transport.SHARED_MEMORY : Transport.TCP);
+    }
+
+    public DistributedKMeansClient(String[] host, int[] port, int connectionsPerHost, Transport transport) {
         this.host = host;
         this.port = port;
+        this.connectionsPerHost = connectionsPerHost;
+        this.latencyMillis = new double[host.length];
+        this.shared = new boolean[host.length];
+
+        for (int i = 0; i < host.length; i++) {
+            pools.add(new ArrayList<>());
+            shared[i] = transport == Transport.SHARED_MEMORY && isLocal(host[i]);
+        }
+    }
+
+    private static boolean isLocal(String host) {
+        try {
+            return Server.isLocal(InetAddress.getByName(host));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    //least loaded open connection of a host, opens a new one while pool is not full
+    private PeerChannel connection(int index) throws IOException {
+        List<PeerChannel> pool = pools.get(index);
+
+        synchronized (pool) {
+            pool.removeIf(connection -> !connection.isOpen());
+
+            PeerChannel best = null;
+            for (PeerChannel connection : pool) {
+                if (best == null || connection.getInFlight() < best.getInFlight()) {
+                    best = connection;
+                }
+            }
+
+            if (best == null || (best.getInFlight() > 0 && pool.size() < connectionsPerHost)) {
+                best = shared[index]
+                        ? new SharedMemoryConnection(host[index], port[index], deadlineMillis)
+                        : new PeerConnection(host[index], port[index], deadlineMillis);
+                pool.add(best);
+            }
+            return best;
+        }
+    }
+
+    private int nextHost() {
+        return current.getAndUpdate(i -> (i + 1) % host.length); // round robin po hostovima
+    }
+
+    public CompletableFuture<String> sendCommandAsync(String command, String payload) {
+        return sendCommandAsync(nextHost(), command, payload);
+    }
+
+    public CompletableFuture<String> sendCommandAsync(int hostIndex, String command, String payload) {
+        try {
+            return timed(hostIndex, connection(hostIndex).sendText(command, payload));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public CompletableFuture<BinaryFrame> sendBinaryAsync(byte command, byte[] payload) {
+        return sendBinaryAsync(nextHost(), command, payload);
+    }
+
+    public CompletableFuture<BinaryFrame> sendBinaryAsync(int hostIndex, byte command, byte[] payload) {
+        int requestId = requestIds.incrementAndGet();
+
+        try {
+            return timed(hostIndex, connection(hostIndex).sendBinary(command, requestId, payload)).thenApply(response -> {
+                if (response.getCommand() == BinaryProtocol.ERROR) {
+                    throw new CompletionException(new IOException("Peer error: " + BinaryProtocol.decodeError(response)));
+                }
+                return response;
+            });
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    //request goes to the next host, a straggling or failed attempt is repeated once on another host
+    //and whichever answer comes first completes the result, request(host) sends one attempt
+    public <T> CompletableFuture<T> sendSpeculative(IntFunction<CompletableFuture<T>> request) {
+        return sendSpeculative(nextHost(), request);
+    }
+
+    //with one host there is no other peer to ask, the request is sent once and its failure is the result
+    public <T> CompletableFuture<T> sendSpeculative(int primary, IntFunction<CompletableFuture<T>> request) {
+        if (host.length == 1) {
+            return request.apply(primary);
+        }
+
+        Speculation<T> speculation = new Speculation<>(request, primary);
+        speculation.send(speculation.primary);
+
+        long delay = stragglerDelay(); // no latency samples yet means a backup only after a failure
+        if (delay > 0) {
+            timer().schedule(speculation::sendBackup, delay, TimeUnit.MILLISECONDS);
+        }
+        return speculation.result;
+    }
+
+    private synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "DistributedKMeansClient-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return timer;
+    }
+
+    private class Speculation<T> {
+        private final IntFunction<CompletableFuture<T>> request;
+        private final int primary;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicInteger outstanding = new AtomicInteger(0);
+        private final AtomicBoolean backupSent = new AtomicBoolean(false);
+
+        Speculation(IntFunction<CompletableFuture<T>> request, int primary) {
+            this.request = request;
+            this.primary = primary;
+        }
+
+        void send(int hostIndex) {
+            outstanding.incrementAndGet();
+            request.apply(hostIndex).whenComplete((response, e) -> {
+                if (e == null) {
+                    result.complete(response);
+                    return;
+                }
+
+                sendBackup();
+                // fails only when every attempt failed and no backup is left to try
+                if (outstanding.decrementAndGet() == 0 && backupSent.get()) {
+                    result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+                }
+            });
+        }
+
+        void sendBackup() {
+            if (!result.isDone() && backupSent.compareAndSet(false, true)) {
+                send(backupHost(primary));
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> timed(int hostIndex, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        return future.whenComplete((response, e) -> {
+            if (e == null) {
+                recordLatency(hostIndex, (System.nanoTime() - start) / 1_000_000.0);
+            }
+        });
+    }
+
+    private void recordLatency(int hostIndex, double millis) {
+        synchronized (latencyMillis) {
+            double old = latencyMillis[hostIndex];
+            latencyMillis[hostIndex] = old == 0 ? millis : old + LATENCY_WEIGHT * (millis - old);
+        }
+    }
+
+    //0 until some peer has answered, then a multiple of the fastest peer latency
+    private long stragglerDelay() {
+        synchronized (latencyMillis) {
+            double fastest = 0;
+            for (double latency : latencyMillis) {
+                if (latency > 0 && (fastest == 0 || latency < fastest)) {
+                    fastest = latency;
+                }
+            }
+            return fastest == 0 ? 0 : Math.max(MIN_STRAGGLER_MS, (long) (fastest * STRAGGLER_FACTOR));
+        }
+    }
+
+    //fastest other host, sendSpeculative never speculates with a single host
+    private int backupHost(int primary) {
+        synchronized (latencyMillis) {
+            int best = primary;
+            for (int i = 0; i < latencyMillis.length; i++) {
+                if (i != primary && (best == primary || latencyMillis[i] < latencyMillis[best])) {
+                    best = i;
+                }
+            }
+            return best;
+        }
     }
 
     public String sendCommandAndReceiveResponse(String command, String payload) throws IOException {
-        int index = current.getAndUpdate(i -> (i + 1) % host.length); // round robin po hostovima
+        return await(sendCommandAsync(command, payload));
+    }
 
-        try (Socket socket = new Socket(host[index], port[index]);
-             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+    public BinaryFrame sendBinaryAndReceiveResponse(byte command, byte[] payload) throws IOException {
+        return await(sendBinaryAsync(command, payload));
+    }
 
-            writer.write(command + " " + payload);
-            writer.newLine();
-            writer.flush();
+    //ServerStats JSON of one host, reset clears its counters after taking the snapshot
+    public String stats(int hostIndex, boolean reset) throws IOException {
+        BinaryFrame response = await(sendBinaryAsync(hostIndex, BinaryProtocol.STATS, BinaryProtocol.encodeStats(reset)));
+        return new String(response.getBody(), StandardCharsets.UTF_8);
+    }
 
-            String response = reader.readLine();
-            //System.out.println(response);
-            return response;
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (timer != null) {
+                timer.shutdownNow();
+                timer = null;
+            }
+        }
+        synchronized (latencyMillis) {
+            Arrays.fill(latencyMillis, 0); // the next fit may run against restarted or reloaded peers
+        }
+        for (List<PeerChannel> pool : pools) {
+            synchronized (pool) {
+                for (PeerChannel connection : pool) {
+                    connection.close();
+                }
+                pool.clear();
+            }
         }
     }
 }
@@ -0,0 +1,78 @@
+//Elkan: upper bound to own centroid, lower bound to each centroid and centroid to centroid distances
+public class ElkanAssignment extends BoundedAssignment {
+    private final double[] upper;
+    private final double[] lower; // size * k
+    private final double[] centroidDistances; // k * k
+
+    public ElkanAssignment(LocationStore locations, int k) {
+        super(locations, k);
+        this.upper = new double[locations.size()];
+        this.lower = new double[Math.multiplyExact(locations.size(), k)];
+        this.centroidDistances = new double[k * k];
+    }
+
+    @Override
+    protected void updateCentroids() {
+        for (int a = 0; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                double d = centroidDistance(a, b);
+                centroidDistances[a * k + b] = d;
+                centroidDistances[b * k + a] = d;
+            }
+        }
+    }
+
+    @Override
+    public int assign(int index) {
+        int closest = locations.getAssignment(index);
+        int offset = index * k;
+
+        if (first || closest < 0) {
+            double minDist = Double.MAX_VALUE;
+            closest = 0;
+            for (int j = 0; j < k; j++) {
+                double dist = distanceTo(index, j);
+                lower[offset + j] = dist;
+                if (dist < minDist) {
+                    minDist = dist;
+                    closest = j;
+                }
+            }
+            upper[index] = minDist;
+            return closest;
+        }
+
+        for (int j = 0; j < k; j++) {
+            lower[offset + j] = Math.max(0, lower[offset + j] - drift[j]);
+        }
+        upper[index] += drift[closest];
+
+        if (upper[index] <= halfNearest[closest]) {
+            return closest;
+        }
+
+        boolean tight = false;
+        for (int j = 0; j < k; j++) {
+            if (j == closest) continue;
+
+            double bound = Math.max(lower[offset + j], centroidDistances[closest * k + j] / 2);
+            if (upper[index] <= bound) continue;
+
+            if (!tight) {
+                upper[index] = distanceTo(index, closest);
+                lower[offset + closest] = upper[index];
+                tight = true;
+                if (upper[index] <= bound) continue;
+            }
+
+            double dist = distanceTo(index, j);
+            lower[offset + j] = dist;
+            if (dist < upper[index]) {
+                closest = j;
+                upper[index] = dist;
+            }
+        }
+
+        return closest;
+    }
+}
@@ -0,0 +1,8 @@
+//called on the thread that runs fit(), a slow listener makes the fit slower
+public interface FitListener {
+    default void iterationDone(FitStats stats, FitStats.Iteration iteration) {
+    }
+
+    default void fitDone(FitStats stats) {
+    }
+}
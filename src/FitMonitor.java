@@ -0,0 +1,117 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//JMX view of finished fits, one bean per engine registered on its first fit, -Dkmeans.jmx=false turns it off
+public class FitMonitor implements FitMonitorMXBean {
+    private static final boolean ENABLED = !"false".equals(System.getProperty("kmeans.jmx"));
+    private static final Map<String, FitMonitor> monitors = new ConcurrentHashMap<>();
+
+    private volatile FitStats last;
+    private long fits;
+    private int maxIterations;
+    private long maxNanos;
+
+    static void publish(FitStats stats) {
+        if (ENABLED) {
+            monitors.computeIfAbsent(stats.getEngine(), FitMonitor::register).record(stats);
+        }
+    }
+
+    private static FitMonitor register(String engine) {
+        FitMonitor monitor = new FitMonitor();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, new ObjectName("kmeans:type=FitStats,engine=" + engine));
+        } catch (JMException e) {
+            System.out.println("Fit stats of " + engine + " not registered in JMX: " + e.getMessage());
+        }
+        return monitor;
+    }
+
+    private synchronized void record(FitStats stats) {
+        last = stats;
+        fits++;
+        maxIterations = Math.max(maxIterations, stats.getIterations().size());
+        maxNanos = Math.max(maxNanos, stats.getNanos());
+    }
+
+    @Override
+    public synchronized long getFits() {
+        return fits;
+    }
+
+    @Override
+    public int getLastIterations() {
+        FitStats stats = last;
+        return stats == null ? 0 : stats.getIterations().size();
+    }
+
+    @Override
+    public boolean isLastConverged() {
+        FitStats stats = last;
+        return stats != null && stats.isConverged();
+    }
+
+    @Override
+    public double getLastFitMillis() {
+        FitStats stats = last;
+        return stats == null ? 0 : stats.getNanos() / 1e6;
+    }
+
+    @Override
+    public double getLastAssignMillis() {
+        FitStats stats = last;
+        return stats == null ? 0 : stats.assignNanos() / 1e6;
+    }
+
+    @Override
+    public double getLastReduceMillis() {
+        FitStats stats = last;
+        return stats == null ? 0 : stats.reduceNanos() / 1e6;
+    }
+
+    @Override
+    public double getLastNetworkMillis() {
+        FitStats stats = last;
+        return stats == null ? 0 : stats.networkNanos() / 1e6;
+    }
+
+    @Override
+    public double getLastSerializationMillis() {
+        FitStats stats = last;
+        return stats == null ? 0 : stats.serializationNanos() / 1e6;
+    }
+
+    @Override
+    public long getLastBytesSent() {
+        FitStats stats = last;
+        return stats == null ? 0 : stats.bytesSent();
+    }
+
+    @Override
+    public double getLastInertia() {
+        FitStats stats = last;
+        FitStats.Iteration iteration = stats == null ? null : stats.last();
+        return iteration == null ? Double.NaN : iteration.inertia;
+    }
+
+    @Override
+    public synchronized int getMaxIterations() {
+        return maxIterations;
+    }
+
+    @Override
+    public synchronized double getMaxFitMillis() {
+        return maxNanos / 1e6;
+    }
+
+    @Override
+    public synchronized void reset() {
+        last = null;
+        fits = 0;
+        maxIterations = 0;
+        maxNanos = 0;
+    }
+}
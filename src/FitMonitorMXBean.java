@@ -0,0 +1,16 @@
+//attributes of kmeans:type=FitStats,engine=<engine>, Last* are the last finished fit, Max* since start or reset
+public interface FitMonitorMXBean {
+    long getFits();
+    int getLastIterations();
+    boolean isLastConverged();
+    double getLastFitMillis();
+    double getLastAssignMillis();
+    double getLastReduceMillis();
+    double getLastNetworkMillis();
+    double getLastSerializationMillis();
+    long getLastBytesSent();
+    double getLastInertia();
+    int getMaxIterations();
+    double getMaxFitMillis();
+    void reset();
+}
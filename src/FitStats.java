@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToLongFunction;
+
+//what one fit did, iteration by iteration, filled by the engine through FitTracker while it runs
+//times are System.nanoTime differences, a phase the engine does not have stays 0,
+//a value it cannot see (labels that live on remote peers) is -1 or NaN
+public class FitStats {
+    private final String engine;
+    private final int points;
+    private final int k;
+    private final List<Iteration> iterations = new ArrayList<>();
+    private long nanos;
+    private boolean converged;
+    private String stopReason; // null when the engine has a single stopping rule
+
+    //one iteration, for MiniBatchKMeans one batch
+    public static class Iteration {
+        public final int number; // 0 based
+        public final long nanos;
+        public final long assignNanos;        // distances and per cluster sums
+        public final long reduceNanos;        // sums of all leaves or peers into new centroids
+        public final long networkNanos;       // waiting for peers, serialization not included
+        public final long serializationNanos; // encoding requests and decoding replies
+        public final long reassigned;         // points that changed cluster
+        public final double shift;            // largest distance a centroid moved
+        public final double inertia;          // squared distances to the centroids the points were assigned to
+        public final long bytesSent;
+
+        public Iteration(int number, long nanos, long assignNanos, long reduceNanos, long networkNanos, long serializationNanos,
+                         long reassigned, double shift, double inertia, long bytesSent) {
+            this.number = number;
+            this.nanos = nanos;
+            this.assignNanos = assignNanos;
+            this.reduceNanos = reduceNanos;
+            this.networkNanos = networkNanos;
+            this.serializationNanos = serializationNanos;
+            this.reassigned = reassigned;
+            this.shift = shift;
+            this.inertia = inertia;
+            this.bytesSent = bytesSent;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "#%d %.3f ms (assign %.3f, reduce %.3f, network %.3f, serialization %.3f) reassigned=%d shift=%.6f inertia=%.6f bytes=%d",
+                    number, nanos / 1e6, assignNanos / 1e6, reduceNanos / 1e6, networkNanos / 1e6, serializationNanos / 1e6,
+                    reassigned, shift, inertia, bytesSent);
+        }
+    }
+
+    public FitStats(String engine, int points, int k) {
+        this.engine = engine;
+        this.points = points;
+        this.k = k;
+    }
+
+    void add(Iteration iteration) {
+        iterations.add(iteration);
+    }
+
+    void finish(long nanos, boolean converged, String stopReason) {
+        this.nanos = nanos;
+        this.converged = converged;
+        this.stopReason = stopReason;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public List<Iteration> getIterations() {
+        return Collections.unmodifiableList(iterations);
+    }
+
+    public Iteration last() {
+        return iterations.isEmpty() ? null : iterations.get(iterations.size() - 1);
+    }
+
+    //whole fit including seeding requests and the final labels, not just the sum of iterations
+    public long getNanos() {
+        return nanos;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public String getStopReason() {
+        return stopReason;
+    }
+
+    public long assignNanos() {
+        return sum(iteration -> iteration.assignNanos);
+    }
+
+    public long reduceNanos() {
+        return sum(iteration -> iteration.reduceNanos);
+    }
+
+    public long networkNanos() {
+        return sum(iteration -> iteration.networkNanos);
+    }
+
+    public long serializationNanos() {
+        return sum(iteration -> iteration.serializationNanos);
+    }
+
+    public long bytesSent() {
+        return sum(iteration -> iteration.bytesSent);
+    }
+
+    private long sum(ToLongFunction<Iteration> value) {
+        long total = 0;
+        for (Iteration iteration : iterations) {
+            total += value.applyAsLong(iteration);
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        Iteration last = last();
+        return String.format(Locale.ROOT, "%s n=%d k=%d: %d iterations, %s, %.3f ms (assign %.3f, reduce %.3f, network %.3f, serialization %.3f), %d bytes sent, inertia %.6f",
+                engine, points, k, iterations.size(), (converged ? "converged" : "not converged") + (stopReason == null ? "" : " (" + stopReason + ")"), nanos / 1e6,
+                assignNanos() / 1e6, reduceNanos() / 1e6, networkNanos() / 1e6, serializationNanos() / 1e6,
+                bytesSent(), last == null ? Double.NaN : last.inertia);
+    }
+}
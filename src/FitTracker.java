@@ -0,0 +1,61 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//one per engine, builds the FitStats of the running fit, tells the listeners and publishes finished fits to JMX
+public class FitTracker {
+    private final String engine;
+    private final List<FitListener> listeners = new CopyOnWriteArrayList<>();
+    private FitStats current;
+    private volatile FitStats last;
+    private long fitStart;
+    private long iterationStart;
+
+    public FitTracker(String engine) {
+        this.engine = engine;
+    }
+
+    public void addListener(FitListener listener) {
+        listeners.add(listener);
+    }
+
+    public void start(int points, int k) {
+        current = new FitStats(engine, points, k);
+        fitStart = System.nanoTime();
+    }
+
+    //returns the start time so the engine can measure its first phase from it
+    public long startIteration() {
+        iterationStart = System.nanoTime();
+        return iterationStart;
+    }
+
+    public void iteration(int number, long assignNanos, long reduceNanos, long networkNanos, long serializationNanos,
+                          long reassigned, double shift, double inertia, long bytesSent) {
+        FitStats.Iteration iteration = new FitStats.Iteration(number, System.nanoTime() - iterationStart, assignNanos, reduceNanos,
+                networkNanos, serializationNanos, reassigned, shift, inertia, bytesSent);
+        current.add(iteration);
+        for (FitListener listener : listeners) {
+            listener.iterationDone(current, iteration);
+        }
+    }
+
+    public void finish(boolean converged) {
+        finish(converged, null);
+    }
+
+    //stopReason for engines with more than one way to stop, null when converged says it all
+    public void finish(boolean converged, String stopReason) {
+        FitStats stats = current;
+        stats.finish(System.nanoTime() - fitStart, converged, stopReason);
+        last = stats;
+        FitMonitor.publish(stats);
+        for (FitListener listener : listeners) {
+            listener.fitDone(stats);
+        }
+    }
+
+    //last finished fit, null before the first one
+    public FitStats last() {
+        return last;
+    }
+}
@@ -38,11 +38,11 @@ public class GuiApp extends Application {
 
     public void start(Stage primaryStage) {
         List<Location> locations = new ArrayList<>();
-        String filePath = "/home/janko/89221073_k-means/K-means/src/GUI_Location.json";
+        String filePath = "GUI_Location.json"; // written by MPIMain into the working directory
         loadLocations(filePath, locations);
 
         List<Location> centroidsList = new ArrayList<>();
-        filePath = "/home/janko/89221073_k-means/K-means/src/GUI_Centroid.json";
+        filePath = "GUI_Centroid.json";
         loadLocations(filePath, centroidsList);
 
         Location[] centroids = centroidsList.toArray(new Location[0]);
@@ -56,7 +56,7 @@ public class GuiApp extends Application {
                 }
             });
 
-            File file = new File("/home/janko/89221073_k-means/K-means/src/map.html");
+            File file = new File("map.html").exists() ? new File("map.html") : new File("src/map.html");
             webEngine.load(file.toURI().toString());
 
             Scene scene = new Scene(webView, 800, 600);
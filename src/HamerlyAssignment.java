@@ -0,0 +1,70 @@
+//Hamerly: upper bound to own centroid, one lower bound to every other centroid
+public class HamerlyAssignment extends BoundedAssignment {
+    private final double[] upper;
+    private final double[] lower;
+
+    private double maxDrift;
+    private double secondMaxDrift;
+    private int maxDriftCentroid;
+
+    public HamerlyAssignment(LocationStore locations, int k) {
+        super(locations, k);
+        this.upper = new double[locations.size()];
+        this.lower = new double[locations.size()];
+    }
+
+    @Override
+    protected void updateCentroids() {
+        maxDrift = 0;
+        secondMaxDrift = 0;
+        maxDriftCentroid = -1;
+
+        for (int j = 0; j < k; j++) {
+            if (!(drift[j] <= maxDrift)) {
+                secondMaxDrift = maxDrift;
+                maxDrift = drift[j];
+                maxDriftCentroid = j;
+            } else if (drift[j] > secondMaxDrift) {
+                secondMaxDrift = drift[j];
+            }
+        }
+    }
+
+    @Override
+    public int assign(int index) {
+        int closest = locations.getAssignment(index);
+
+        if (!first && closest >= 0) {
+            upper[index] += drift[closest];
+            lower[index] -= closest == maxDriftCentroid ? secondMaxDrift : maxDrift;
+
+            double bound = Math.max(halfNearest[closest], lower[index]);
+            if (upper[index] <= bound) {
+                return closest;
+            }
+
+            upper[index] = distanceTo(index, closest);
+            if (upper[index] <= bound) {
+                return closest;
+            }
+        }
+
+        double minDist = Double.MAX_VALUE;
+        double secondDist = Double.MAX_VALUE;
+        closest = 0;
+        for (int j = 0; j < k; j++) {
+            double dist = distanceTo(index, j);
+            if (dist < minDist) {
+                secondDist = minDist;
+                minDist = dist;
+                closest = j;
+            } else if (dist < secondDist) {
+                secondDist = dist;
+            }
+        }
+
+        upper[index] = minDist;
+        lower[index] = secondDist;
+        return closest;
+    }
+}
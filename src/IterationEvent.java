@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+//coordinator side, one per DistributedKMeans iteration, CriticalPath joins it with the partition and peer events
+@Name("kmeans.Iteration")
+@Label("Iteration")
+@Category({"K-Means", "Coordinator"})
+@Description("One distributed iteration, from the first request until the new centroids are known")
+@StackTrace(false)
+public class IterationEvent extends jdk.jfr.Event {
+    @Label("Fit Id")
+    public long fitId;
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Requests")
+    public int requests;
+
+    @Label("Reduce")
+    @Timespan
+    public long reduceNanos;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    public long bytesSent;
+}
@@ -17,6 +17,11 @@ public class JsonPayloadParser {
 
             payload.setStart(start);
             payload.setEnd(end);
+            payload.setDatasetId(jsonObject.getInt("dataset", -1));
+            if (jsonObject.containsKey("fit")) {
+                payload.setFitId(jsonObject.getJsonNumber("fit").longValue());
+                payload.setIteration(jsonObject.getInt("iteration", -1));
+            }
 
             // Čitanje niza centroids
             JsonArray centroidsArray = jsonObject.getJsonArray("centroids");
@@ -29,9 +34,8 @@ public class JsonPayloadParser {
                 double capacity = locJson.getJsonNumber("capacity").doubleValue();
                 double la = locJson.getJsonNumber("la").doubleValue();
                 double lo = locJson.getJsonNumber("lo").doubleValue();
-                String color = locJson.getString("color");
 
-                centroids[i] = new Location(name, capacity, la, lo, color);
+                centroids[i] = new Location(name, capacity, la, lo);
             }
 
             payload.setCentroids(centroids);
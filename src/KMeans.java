@@ -1,64 +1,111 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Random;
 
 public class KMeans implements KMeansAlgorithm{
     private int k;
     private Location[] centroids;
+    private final String[] palette;
+    private int iterations;
     private final Random random = new Random(12345L); // fiksni seed
-    private List<Location> locations;
+    private LocationStore locations;
+    private final AssignmentMode mode;
+    private final FitTracker tracker = new FitTracker("KMeans");
 
-    public KMeans(int k, List<Location> locations) {
+    public KMeans(int k, LocationStore locations) {
+        this(k, locations, AssignmentMode.STANDARD);
+    }
+
+    public KMeans(int k, LocationStore locations, AssignmentMode mode) {
+        this(k, locations, mode, new RandomInitializer());
+    }
+
+    public KMeans(int k, LocationStore locations, AssignmentMode mode, CentroidInitializer initializer) {
         this.k = k;
-        this.centroids = new Location[k];
         this.locations = locations;
-
-        for (int i = 0; i < k; i++) {
-            // Uzmi nasumičnu lokaciju iz liste
-            Location randomLocation = locations.get(random.nextInt(locations.size()));
-            this.centroids[i] = randomLocation;
-            this.centroids[i].setColor(generateRandomColor(random));
-        }
+        this.mode = mode;
+        this.centroids = initializer.initialize(locations, k, random);
+        this.palette = Palette.of(centroids);
     }
 
     public void fit() {
-       for(int i = 0; i < 100; i++) {
-           //[][]
-            List<List<Location>> clusters = new ArrayList<>();
+       int size = locations.size();
+       double[] la = locations.la();
+       double[] lo = locations.lo();
+       double[] capacity = locations.capacity();
+       int[] assignment = locations.assignment();
+       BoundedAssignment bounds = BoundedAssignment.create(mode, locations, k);
+       DistanceKernel kernel = DistanceKernel.create(mode);
+       double[] centroidData = new double[k * 3];
+       int[] previous = bounds == null ? new int[size] : null; // kernel overwrites labels before they are compared
+       boolean converged = false;
+       tracker.start(size, k);
 
+       for(int i = 0; i < 100; i++) {
+            iterations = i + 1;
+            long assignStart = tracker.startIteration();
             for (int j = 0; j < k; j++) {
-                clusters.add(new ArrayList<>());
+                centroidData[j * 3] = centroids[j].getLa();
+                centroidData[j * 3 + 1] = centroids[j].getLo();
+                centroidData[j * 3 + 2] = centroids[j].getCapacity();
+            }
+            if (bounds != null) {
+                bounds.update(centroids);
+            } else {
+                System.arraycopy(assignment, 0, previous, 0, size);
+                kernel.assign(la, lo, capacity, 0, size, centroidData, assignment);
             }
 
+            double[] sumLa = new double[k];
+            double[] sumLo = new double[k];
+            double[] sumCapacity = new double[k];
+            int[] counts = new int[k];
+            long reassigned = 0;
+            double inertia = 0;
+
             //go through all locations
-            for (Location location : locations) {
-                int closestCentroid = findClosestCentroid(location);
-                location.setColor(centroids[closestCentroid].getColor()); //set color of closest centroid
+            for (int p = 0; p < size; p++) {
+                int closestCentroid = bounds != null ? bounds.assign(p) : assignment[p];
+                if (closestCentroid != (bounds != null ? assignment[p] : previous[p])) {
+                    reassigned++;
+                }
+                assignment[p] = closestCentroid; //remember cluster, color is resolved from palette
 
-                clusters.get(closestCentroid).add(location); //get array of thaht cluster and add in this group that location
+                double dLa = la[p] - centroidData[closestCentroid * 3];
+                double dLo = lo[p] - centroidData[closestCentroid * 3 + 1];
+                double dCapacity = capacity[p] - centroidData[closestCentroid * 3 + 2];
+                inertia += dLa * dLa + dLo * dLo + dCapacity * dCapacity;
+
+                sumLa[closestCentroid] += la[p];
+                sumLo[closestCentroid] += lo[p];
+                sumCapacity[closestCentroid] += capacity[p];
+                counts[closestCentroid]++;
             }
 
+           long reduceStart = System.nanoTime();
            boolean changed = false;
+           double shift = 0;
 
             for (int j = 0; j < k; j++) {
-                //from group of clusters get all location and calculate new cluster position
+                //from sums of cluster calculate new cluster position
                 Location oldCentroid = centroids[j];
-                Location newCentroid = calculateCentroid(clusters.get(j), centroids[j].getColor());
-               // System.out.println(clusters.get(j).size());
+                Location newCentroid = calculateCentroid(sumLa[j], sumLo[j], sumCapacity[j], counts[j]);
 
                 if (!areEqual(oldCentroid, newCentroid)) {
                     changed = true;
                 }
+                shift = Math.max(shift, oldCentroid.distance(newCentroid));
 
                 centroids[j] = newCentroid;
             }
 
+           tracker.iteration(i, reduceStart - assignStart, System.nanoTime() - reduceStart, 0, 0, reassigned, shift, inertia, 0);
            if (!changed) {
-               System.out.println("Converged at iteration: " + i);
+               converged = true;
                break;
            }
 
         }
+        tracker.finish(converged);
     }
 
     private boolean areEqual(Location a, Location b) {
@@ -68,46 +115,41 @@ public class KMeans implements KMeansAlgorithm{
                 Math.abs(a.getCapacity() - b.getCapacity()) < different;
     }
 
-    private static String generateRandomColor(Random random) {
-        int red = random.nextInt(256);
-        int green = random.nextInt(256);
-        int blue = random.nextInt(256);
+    public void  shutdown(){
 
-        // format for make random color #RRGGBB
-        return String.format("#%02X%02X%02X", red, green, blue);
     }
 
-    private int findClosestCentroid(Location location) {
-        double minDistance = Double.MAX_VALUE;
-        int closestCentroid = 0;
-        for (int i = 0; i < k; i++) {
-            double distance = location.distance(centroids[i]);
-            if (distance < minDistance) {
-                minDistance = distance;
-                closestCentroid = i;
-            }
+    private Location calculateCentroid(double sumLa, double sumLo, double sumCapacity, int size) {
+        if (size == 0) {
+            return new Location("Centroid", 0, 0, 0);
         }
+        return new Location("Centroid", sumCapacity / size, sumLa / size, sumLo / size);
+    }
 
-        return closestCentroid;
+    public Location[] getCentroids() {
+        return Palette.colored(centroids, palette);
     }
 
-    public void  shutdown(){
+    public int[] getLabels() {
+        return Arrays.copyOf(locations.assignment(), locations.size());
+    }
 
+    public String[] getPalette() {
+        return palette;
     }
 
-    private Location calculateCentroid(List<Location> cluster, String color) {
-        double sumLa = 0, sumLo = 0, sumCapacity = 0;
-        for (Location location : cluster) {
-            sumLa += location.getLa();
-            sumLo += location.getLo();
-            sumCapacity += location.getCapacity();
-        }
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
 
-        int size = cluster.size();
-        return new Location("Centroid", sumCapacity / size, sumLa / size, sumLo / size, color);
+    @Override
+    public FitStats getStats() {
+        return tracker.last();
     }
 
-    public Location[] getCentroids() {
-        return centroids;
+    @Override
+    public void addListener(FitListener listener) {
+        tracker.addListener(listener);
     }
 }
\ No newline at end of file
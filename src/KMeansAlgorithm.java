@@ -1,5 +1,10 @@
 public interface KMeansAlgorithm {
     void fit();
     Location[] getCentroids();
+    int[] getLabels(); // cluster id per location
+    String[] getPalette(); // color per cluster id
+    int getIterations(); // iterations of the last fit
+    FitStats getStats(); // last finished fit, null before the first
+    void addListener(FitListener listener);
     void shutdown();
 }
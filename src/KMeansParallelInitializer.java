@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//k-means||: a few rounds oversample candidates over partitions in parallel,
+//then weighted k-means++ on the small candidate set picks the final k
+public class KMeansParallelInitializer implements CentroidInitializer {
+    private static final int ROUNDS = 5;
+    private static final double OVERSAMPLING = 2.0; // candidates per round = OVERSAMPLING * k on average
+
+    private final int numberOfThreads;
+
+    public KMeansParallelInitializer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public KMeansParallelInitializer(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    @Override
+    public Location[] initialize(LocationStore locations, int k, Random random) {
+        int size = locations.size();
+        int partitions = Math.max(1, Math.min(numberOfThreads, size));
+        int partitionSize = (size + partitions - 1) / partitions;
+        long seed = random.nextLong();
+
+        double[] minDist = new double[size];
+        Arrays.fill(minDist, Double.MAX_VALUE);
+
+        ExecutorService executor = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Integer> candidates = new ArrayList<>();
+            int[] added = { random.nextInt(size) };
+            candidates.add(added[0]);
+
+            double cost = updateDistances(executor, locations, minDist, added, partitions, partitionSize);
+
+            for (int round = 0; round < ROUNDS && cost > 0; round++) {
+                double factor = OVERSAMPLING * k / cost;
+                long roundSeed = seed + (long) round * partitions;
+
+                List<Callable<List<Integer>>> tasks = new ArrayList<>();
+                for (int part = 0; part < partitions; part++) {
+                    int start = part * partitionSize;
+                    int end = Math.min(start + partitionSize, size);
+                    Random partRandom = new Random(roundSeed + part);
+                    tasks.add(() -> {
+                        List<Integer> sampled = new ArrayList<>();
+                        for (int p = start; p < end; p++) {
+                            if (partRandom.nextDouble() < factor * minDist[p]) {
+                                sampled.add(p);
+                            }
+                        }
+                        return sampled;
+                    });
+                }
+
+                List<Integer> roundCandidates = new ArrayList<>();
+                for (List<Integer> sampled : invokeAll(executor, tasks)) {
+                    roundCandidates.addAll(sampled);
+                }
+
+                added = roundCandidates.stream().mapToInt(Integer::intValue).toArray();
+                candidates.addAll(roundCandidates);
+                cost = updateDistances(executor, locations, minDist, added, partitions, partitionSize);
+            }
+
+            int[] candidateIndex = candidates.stream().mapToInt(Integer::intValue).toArray();
+            long[] weights = weigh(executor, locations, candidateIndex, partitions, partitionSize);
+            return reduce(locations, candidateIndex, weights, k, random);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    //lower every point distance with newly added candidates, returns total cost
+    private double updateDistances(ExecutorService executor, LocationStore locations, double[] minDist, int[] added,
+                                   int partitions, int partitionSize) {
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (int part = 0; part < partitions; part++) {
+            int start = part * partitionSize;
+            int end = Math.min(start + partitionSize, locations.size());
+            tasks.add(() -> {
+                double cost = 0;
+                for (int p = start; p < end; p++) {
+                    for (int candidate : added) {
+                        double dist = CentroidInitializer.squaredDistance(locations, p, candidate);
+                        if (dist < minDist[p]) {
+                            minDist[p] = dist;
+                        }
+                    }
+                    cost += minDist[p];
+                }
+                return cost;
+            });
+        }
+
+        double cost = 0;
+        for (double partCost : invokeAll(executor, tasks)) {
+            cost += partCost;
+        }
+        return cost;
+    }
+
+    //how many points are closest to every candidate
+    private long[] weigh(ExecutorService executor, LocationStore locations, int[] candidates, int partitions, int partitionSize) {
+        List<Callable<long[]>> tasks = new ArrayList<>();
+        for (int part = 0; part < partitions; part++) {
+            int start = part * partitionSize;
+            int end = Math.min(start + partitionSize, locations.size());
+            tasks.add(() -> {
+                long[] counts = new long[candidates.length];
+                for (int p = start; p < end; p++) {
+                    double best = Double.MAX_VALUE;
+                    int closest = 0;
+                    for (int c = 0; c < candidates.length; c++) {
+                        double dist = CentroidInitializer.squaredDistance(locations, p, candidates[c]);
+                        if (dist < best) {
+                            best = dist;
+                            closest = c;
+                        }
+                    }
+                    counts[closest]++;
+                }
+                return counts;
+            });
+        }
+
+        long[] weights = new long[candidates.length];
+        for (long[] counts : invokeAll(executor, tasks)) {
+            for (int c = 0; c < weights.length; c++) {
+                weights[c] += counts[c];
+            }
+        }
+        return weights;
+    }
+
+    //weighted k-means++ over candidates, if there are not enough candidates the rest is random
+    private Location[] reduce(LocationStore locations, int[] candidates, long[] weights, int k, Random random) {
+        Location[] centroids = new Location[k];
+        int n = candidates.length;
+        double[] minDist = new double[n];
+        Arrays.fill(minDist, Double.MAX_VALUE);
+        double[] weighted = new double[n];
+
+        int chosen = KMeansPlusPlusInitializer.sample(toDouble(weights), locations.size(), random);
+        centroids[0] = CentroidInitializer.centroid(locations, candidates[chosen], random);
+
+        for (int c = 1; c < k; c++) {
+            if (c >= n) {
+                centroids[c] = CentroidInitializer.centroid(locations, random.nextInt(locations.size()), random);
+                continue;
+            }
+
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                double dist = CentroidInitializer.squaredDistance(locations, candidates[i], candidates[chosen]);
+                if (dist < minDist[i]) {
+                    minDist[i] = dist;
+                }
+                weighted[i] = minDist[i] * weights[i];
+                total += weighted[i];
+            }
+
+            chosen = KMeansPlusPlusInitializer.sample(weighted, total, random);
+            centroids[c] = CentroidInitializer.centroid(locations, candidates[chosen], random);
+        }
+
+        return centroids;
+    }
+
+    private static double[] toDouble(long[] values) {
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while seeding centroids", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Seeding failed", e.getCause());
+        }
+        return results;
+    }
+}
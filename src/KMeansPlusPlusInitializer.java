@@ -0,0 +1,49 @@
+import java.util.Arrays;
+import java.util.Random;
+
+//k-means++: every next centroid is sampled with probability proportional to squared distance to closest chosen one
+public class KMeansPlusPlusInitializer implements CentroidInitializer {
+    @Override
+    public Location[] initialize(LocationStore locations, int k, Random random) {
+        int size = locations.size();
+        Location[] centroids = new Location[k];
+        double[] minDist = new double[size];
+        Arrays.fill(minDist, Double.MAX_VALUE);
+
+        int chosen = random.nextInt(size);
+        centroids[0] = CentroidInitializer.centroid(locations, chosen, random);
+
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int p = 0; p < size; p++) {
+                double dist = CentroidInitializer.squaredDistance(locations, p, chosen);
+                if (dist < minDist[p]) {
+                    minDist[p] = dist;
+                }
+                total += minDist[p];
+            }
+
+            chosen = sample(minDist, total, random);
+            centroids[c] = CentroidInitializer.centroid(locations, chosen, random);
+        }
+
+        return centroids;
+    }
+
+    //index with probability weight[i] / total, uniform if all weights are zero
+    static int sample(double[] weights, double total, Random random) {
+        if (!(total > 0)) {
+            return random.nextInt(weights.length);
+        }
+
+        double target = random.nextDouble() * total;
+        double running = 0;
+        for (int i = 0; i < weights.length; i++) {
+            running += weights[i];
+            if (running > target) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//log-linear buckets like HdrHistogram: 32 linear sub-buckets per power of two, a value is off by at most ~3%
+//record() is lock free and allocates nothing, readers see a histogram that is still being written, which is fine for monitoring
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_MAGNITUDE = 40; // 2^40 ns je ~18 minuta, vece vrednosti idu u poslednji bucket
+
+    private final AtomicLongArray buckets = new AtomicLongArray(SUB_COUNT * (MAX_MAGNITUDE - SUB_BITS + 2));
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0; // nanoTime of two threads
+        }
+        buckets.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    private int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) {
+            return buckets.length() - 1;
+        }
+        int shift = magnitude - SUB_BITS;
+        return SUB_COUNT * (shift + 1) + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    //largest value that falls into bucket index
+    private static long highestIn(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long lowest = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    //value below which the fraction of recorded values lies, fraction in [0, 1]
+    public long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(highestIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    //values recorded while resetting may be lost or half counted
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+}
@@ -1,8 +1,3 @@
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonObject;
-import javax.json.JsonReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.List;
 import java.util.Random;
@@ -15,6 +10,9 @@ public class Location {
     private String color;
     private static final Random random = new Random(12345L);
 
+    //-Dkmeans.data, relative to the working directory
+    public static final String DATA_FILE = System.getProperty("kmeans.data", "./src/germany.json");
+
     public Location(String name, double capacity, double la, double lo) {
         this.name = name;
         this.capacity = capacity;
@@ -72,38 +70,42 @@ public class Location {
 
     //load locations from a JSON file
     public static void loadLocations(String filePath, List<Location> locations, int locationSize) {
-        try (JsonReader reader = Json.createReader(new FileReader(filePath))) {
-            int counter = 0;
-
-            JsonArray jsonArray = reader.readArray();
-            for (JsonObject jsonObject : jsonArray.getValuesAs(JsonObject.class)) {
-                if (counter >= locationSize) {
-                    break;
-                }
-
-                String name = jsonObject.getString("name");
-                double capacity = jsonObject.getJsonNumber("capacity").doubleValue();
-                double la = Double.parseDouble(jsonObject.getString("la"));
-                double lo = Double.parseDouble(jsonObject.getString("lo"));
+        LocationStore store = new LocationStore(locationSize);
+        loadLocations(filePath, store, locationSize);
+        for (int i = 0; i < store.size(); i++) {
+            locations.add(store.get(i));
+        }
+    }
 
+    //load locations from a JSON file straight into columns
+    public static void loadLocations(String filePath, LocationStore locations, int locationSize) {
+        loadLocations(filePath, locations, locationSize, 1);
+    }
 
-                locations.add(new Location(name, capacity / 1000, la, lo));
-                counter++;
+    //numberOfThreads > 1 parses byte ranges of the file in parallel
+    public static void loadLocations(String filePath, LocationStore locations, int locationSize, int numberOfThreads) {
+        //mapped binary copy first, json only when the cache is missing or stale
+        int counter = LocationCache.load(filePath, locations, locationSize);
+        if (counter < 0) {
+            try {
+                counter = numberOfThreads > 1
+                        ? LocationLoader.loadParallel(filePath, locations, locationSize, numberOfThreads)
+                        : LocationLoader.load(filePath, locations, locationSize);
+            } catch (IOException e) {
+                System.out.println("Error reading file: " + e.getMessage());
+                return;
             }
+        }
 
+        //do thaht just in case if we dont have enough accumulation poin
+        while (counter < locationSize) {
+            String name = "Location_" + (counter + 1);
+            double capacity = 116024 *  random.nextDouble();
+            double la = 48 + (54 - 48) * random.nextDouble();
+            double lo = 8 + (13 - 8) * random.nextDouble();
 
-            //do thaht just in case if we dont have enough accumulation poin
-            while (counter < locationSize) {
-                String name = "Location_" + (counter + 1);
-                double capacity = 116024 *  random.nextDouble();
-                double la = 48 + (54 - 48) * random.nextDouble();
-                double lo = 8 + (13 - 8) * random.nextDouble();
-
-                locations.add(new Location(name, capacity / 1000, la, lo));
-                counter++;
-            }
-        } catch (IOException e) {
-            System.out.println("Error reading file: " + e.getMessage());
+            locations.add(name, capacity / 1000, la, lo);
+            counter++;
         }
     }
 }
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+//binary columnar copy of a locations json file, mapped read-only so processes on one host share page cache
+//layout (little endian): header, la[count], lo[count], capacity[count], nameOffsets[count + 1], utf-8 names
+public class LocationCache {
+    private static final int MAGIC = 0x4C4F4331; // "LOC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    //germany.json -> germany.json.cache next to it
+    public static Path pathFor(String jsonPath) {
+        return Path.of(jsonPath + ".cache");
+    }
+
+    //one-time conversion of the whole json file, capacity is stored already scaled like the json loader does
+    public static int write(String jsonPath) throws IOException {
+        LocationStore store = new LocationStore(1024);
+        LocationLoader.loadParallel(jsonPath, store, Integer.MAX_VALUE, Runtime.getRuntime().availableProcessors());
+
+        Path source = Path.of(jsonPath);
+        int count = store.size();
+        byte[][] names = new byte[count][];
+        long namesLength = 0;
+        for (int i = 0; i < count; i++) {
+            names[i] = store.getName(i) == null ? new byte[0] : store.getName(i).getBytes(StandardCharsets.UTF_8);
+            namesLength += names[i].length;
+        }
+
+        //one mapping can not be larger than 2 GB, neither can the cache
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(HEADER_SIZE + count * 24L + (count + 1L) * 4 + namesLength))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt((int) namesLength);
+        buffer.putLong(Files.size(source)).putLong(Files.getLastModifiedTime(source).toMillis());
+        for (int i = 0; i < count; i++) buffer.putDouble(store.getLa(i));
+        for (int i = 0; i < count; i++) buffer.putDouble(store.getLo(i));
+        for (int i = 0; i < count; i++) buffer.putDouble(store.getCapacity(i));
+
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(offset);
+            offset += names[i].length;
+        }
+        buffer.putInt(offset);
+        for (byte[] name : names) buffer.put(name);
+        buffer.flip();
+
+        //write next to the target and rename, readers never map a half written file
+        //temp name is unique, peers on one host may convert the same file at once
+        Path target = pathFor(jsonPath).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    //appends up to limit cached locations, -1 when there is no cache or it does not match the json file
+    public static int load(String jsonPath, LocationStore locations, int limit) {
+        Path source = Path.of(jsonPath);
+        Path cache = pathFor(jsonPath);
+        if (!Files.isRegularFile(cache) || !Files.isRegularFile(source)) {
+            return -1;
+        }
+
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            if (!matches(data, source)) {
+                return -1;
+            }
+
+            //offsets in long, matches() checked they all end inside the mapping
+            int count = data.getInt(8);
+            int n = Math.min(count, limit);
+            DoubleBuffer la = column(data, HEADER_SIZE, n);
+            DoubleBuffer lo = column(data, HEADER_SIZE + count * 8L, n);
+            DoubleBuffer capacity = column(data, HEADER_SIZE + count * 16L, n);
+            long offsetsStart = HEADER_SIZE + count * 24L;
+            Names names = new Names(data, offsetsStart, offsetsStart + (count + 1L) * 4, n);
+
+            locations.addAll(names, la, lo, capacity);
+            return n;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Ignoring location cache " + cache + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    //names stay in the mapping and are decoded one by one when asked for, most runs never need them
+    public static class Names {
+        private final ByteBuffer data;
+        private final int offsetsStart;
+        private final int namesStart;
+        private final int count;
+
+        Names(ByteBuffer data, long offsetsStart, long namesStart, int count) {
+            this.data = data;
+            this.offsetsStart = Math.toIntExact(offsetsStart);
+            this.namesStart = Math.toIntExact(namesStart);
+            this.count = count;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public String get(int index) {
+            int start = data.getInt(offsetsStart + index * 4);
+            byte[] bytes = new byte[data.getInt(offsetsStart + index * 4 + 4) - start];
+            data.get(namesStart + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    //cache exists and was written from the current json file
+    public static boolean isCurrent(String jsonPath) {
+        Path source = Path.of(jsonPath);
+        Path cache = pathFor(jsonPath);
+        if (!Files.isRegularFile(cache) || !Files.isRegularFile(source)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return matches(data.order(ByteOrder.LITTLE_ENDIAN), source);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean matches(ByteBuffer data, Path source) throws IOException {
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            return false;
+        }
+
+        int count = data.getInt(8);
+        int namesLength = data.getInt(12);
+        return count >= 0 && namesLength >= 0 && data.getLong(16) == Files.size(source) && data.getLong(24) == Files.getLastModifiedTime(source).toMillis()
+                && data.limit() == HEADER_SIZE + (long) count * 24 + (count + 1L) * 4 + namesLength;
+    }
+
+    private static DoubleBuffer column(ByteBuffer data, long offset, int count) {
+        return data.slice(Math.toIntExact(offset), count * 8).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    //java LocationCache [file.json], writes file.json.cache
+    public static void main(String[] args) throws IOException {
+        String jsonPath = args.length > 0 ? args[0] : Location.DATA_FILE;
+        int count = write(jsonPath);
+        System.out.println("Wrote " + count + " locations to " + pathFor(jsonPath));
+    }
+}
@@ -0,0 +1,188 @@
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//reads germany.json style arrays of flat {"name", "capacity", "la", "lo"} objects straight into a LocationStore
+//without building a JSON tree, parallel mode splits the file into byte ranges on object boundaries
+public class LocationLoader {
+    private static final byte[] OPEN = { '[' };
+    private static final byte[] CLOSE = { ']' };
+
+    //returns how many locations were read, at most limit
+    public static int load(String filePath, LocationStore locations, int limit) throws IOException {
+        try (InputStream in = new FileInputStream(filePath);
+             JsonParser parser = Json.createParser(in)) {
+            return parse(parser, locations, limit);
+        }
+    }
+
+    public static int loadParallel(String filePath, LocationStore locations, int limit, int numberOfThreads) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large for one mapping: " + filePath);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            int first = indexOf(data, (byte) '{', 0);
+            int last = lastIndexOf(data, (byte) ']');
+            if (first < 0 || last < first) {
+                return 0;
+            }
+
+            //chunk i is [starts[i], ends[i]), each begins with '{' and ends after '}'
+            int chunks = Math.max(1, numberOfThreads);
+            int step = (last - first) / chunks + 1;
+            List<int[]> ranges = new ArrayList<>();
+            int start = first;
+            while (start >= 0 && start < last) {
+                int next = nextObject(data, start + step, last);
+                int end = next < 0 ? last : lastIndexOf(data, (byte) '}', start, next) + 1;
+                ranges.add(new int[] { start, end });
+                start = next;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(chunks, ranges.size()));
+            try {
+                List<Callable<LocationStore>> tasks = new ArrayList<>();
+                for (int[] range : ranges) {
+                    tasks.add(() -> {
+                        LocationStore part = new LocationStore(1024);
+                        InputStream in = new SequenceInputStream(new ByteArrayInputStream(OPEN),
+                                new SequenceInputStream(new BufferInputStream(data.slice(range[0], range[1] - range[0])), new ByteArrayInputStream(CLOSE)));
+                        try (JsonParser parser = Json.createParser(in)) {
+                            parse(parser, part, limit);
+                        }
+                        return part;
+                    });
+                }
+
+                int counter = 0;
+                for (Future<LocationStore> future : executor.invokeAll(tasks)) {
+                    LocationStore part = future.get();
+                    int take = Math.min(part.size(), limit - counter);
+                    locations.addAll(part, take);
+                    counter += take;
+                }
+                return counter;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + filePath, e);
+            } catch (ExecutionException e) {
+                throw new IOException("Could not parse " + filePath, e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static int parse(JsonParser parser, LocationStore locations, int limit) {
+        int counter = 0;
+        String key = null;
+        String name = null;
+        double capacity = 0, la = 0, lo = 0;
+
+        while (counter < limit && parser.hasNext()) {
+            switch (parser.next()) {
+                case START_OBJECT:
+                    name = null;
+                    capacity = la = lo = 0;
+                    break;
+                case KEY_NAME:
+                    key = parser.getString();
+                    break;
+                case VALUE_STRING:
+                case VALUE_NUMBER:
+                    // la i lo su u germany.json stringovi, capacity je broj
+                    switch (key) {
+                        case "name": name = parser.getString(); break;
+                        case "capacity": capacity = Double.parseDouble(parser.getString()); break;
+                        case "la": la = Double.parseDouble(parser.getString()); break;
+                        case "lo": lo = Double.parseDouble(parser.getString()); break;
+                        default: break;
+                    }
+                    break;
+                case END_OBJECT:
+                    locations.add(name, capacity / 1000, la, lo);
+                    counter++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return counter;
+    }
+
+    //start of the first object that begins at or after from: a '{' after "}," (whitespace allowed)
+    private static int nextObject(ByteBuffer data, int from, int limit) {
+        for (int i = Math.max(from, 1); i < limit; i++) {
+            if (data.get(i) != '{') continue;
+
+            int j = i - 1;
+            while (j > 0 && Character.isWhitespace(data.get(j))) j--;
+            if (data.get(j) != ',') continue;
+            j--;
+            while (j > 0 && Character.isWhitespace(data.get(j))) j--;
+            if (data.get(j) == '}') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer data, byte value, int from) {
+        for (int i = from; i < data.limit(); i++) {
+            if (data.get(i) == value) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer data, byte value) {
+        return lastIndexOf(data, value, 0, data.limit());
+    }
+
+    private static int lastIndexOf(ByteBuffer data, byte value, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (data.get(i) == value) return i;
+        }
+        return -1;
+    }
+
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
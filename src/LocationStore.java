@@ -0,0 +1,195 @@
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//columnar storage for locations, engines iterate primitive columns instead of Location objects
+public class LocationStore {
+    private String[] names;
+    private double[] la;
+    private double[] lo;
+    private double[] capacity;
+    private int[] assignment;
+    private int size;
+    private LocationCache.Names mappedNames; // names of [mappedStart, mappedEnd) that were not asked for yet
+    private int mappedStart;
+    private int mappedEnd;
+
+    public LocationStore() {
+        this(16);
+    }
+
+    public LocationStore(int initialCapacity) {
+        int length = Math.max(initialCapacity, 1);
+        this.names = new String[length];
+        this.la = new double[length];
+        this.lo = new double[length];
+        this.capacity = new double[length];
+        this.assignment = new int[length];
+    }
+
+    public static LocationStore fromLocations(List<Location> locations) {
+        LocationStore store = new LocationStore(locations.size());
+        for (Location location : locations) {
+            store.add(location.getName(), location.getCapacity(), location.getLa(), location.getLo());
+        }
+        return store;
+    }
+
+    public void add(String name, double capacity, double la, double lo) {
+        if (size == names.length) {
+            grow(size * 2);
+        }
+
+        this.names[size] = name;
+        this.capacity[size] = capacity;
+        this.la[size] = la;
+        this.lo[size] = lo;
+        this.assignment[size] = -1;
+        size++;
+    }
+
+    //append first count locations of other store
+    public void addAll(LocationStore other, int count) {
+        if (size + count > names.length) {
+            grow(Math.max(size + count, size * 2));
+        }
+
+        System.arraycopy(other.names, 0, names, size, count);
+        if (other.mappedNames != null && other.mappedStart < count) {
+            if (mappedNames == null) {
+                mappedNames = other.mappedNames;
+                mappedStart = size + other.mappedStart;
+                mappedEnd = size + Math.min(count, other.mappedEnd);
+            } else {
+                for (int i = other.mappedStart; i < Math.min(count, other.mappedEnd); i++) {
+                    names[size + i] = other.getName(i);
+                }
+            }
+        }
+        System.arraycopy(other.la, 0, la, size, count);
+        System.arraycopy(other.lo, 0, lo, size, count);
+        System.arraycopy(other.capacity, 0, capacity, size, count);
+        Arrays.fill(assignment, size, size + count, -1);
+        size += count;
+    }
+
+    //append whole columns, used by the mapped location cache, names are decoded on first getName
+    public void addAll(LocationCache.Names names, DoubleBuffer la, DoubleBuffer lo, DoubleBuffer capacity) {
+        int count = names.size();
+        if (size + count > this.names.length) {
+            grow(Math.max(size + count, size * 2));
+        }
+
+        if (mappedNames == null) {
+            mappedNames = names;
+            mappedStart = size;
+            mappedEnd = size + count;
+        } else {
+            for (int i = 0; i < count; i++) {
+                this.names[size + i] = names.get(i);
+            }
+        }
+        la.get(0, this.la, size, count);
+        lo.get(0, this.lo, size, count);
+        capacity.get(0, this.capacity, size, count);
+        Arrays.fill(assignment, size, size + count, -1);
+        size += count;
+    }
+
+    private void grow(int newLength) {
+        names = Arrays.copyOf(names, newLength);
+        la = Arrays.copyOf(la, newLength);
+        lo = Arrays.copyOf(lo, newLength);
+        capacity = Arrays.copyOf(capacity, newLength);
+        assignment = Arrays.copyOf(assignment, newLength);
+    }
+
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        mappedNames = null;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getName(int index) {
+        String name = names[index];
+        if (name == null && mappedNames != null && index >= mappedStart && index < mappedEnd) {
+            name = mappedNames.get(index - mappedStart);
+            names[index] = name;
+        }
+        return name;
+    }
+
+    public double getLa(int index) {
+        return la[index];
+    }
+
+    public double getLo(int index) {
+        return lo[index];
+    }
+
+    public double getCapacity(int index) {
+        return capacity[index];
+    }
+
+    public int getAssignment(int index) {
+        return assignment[index];
+    }
+
+    public void setAssignment(int index, int cluster) {
+        assignment[index] = cluster;
+    }
+
+    //raw columns for hot loops, only valid until the next add() grows the store
+    public double[] la() {
+        return la;
+    }
+
+    public double[] lo() {
+        return lo;
+    }
+
+    public double[] capacity() {
+        return capacity;
+    }
+
+    public int[] assignment() {
+        return assignment;
+    }
+
+    public double distance(int index, Location other) {
+        double latDiff = la[index] - other.getLa();
+        double lonDiff = lo[index] - other.getLo();
+        double capacityDiff = capacity[index] - other.getCapacity();
+        return Math.sqrt(latDiff * latDiff + lonDiff * lonDiff + capacityDiff * capacityDiff);
+    }
+
+    //materialize one location, color is taken from the palette entry of its cluster
+    public Location get(int index) {
+        return new Location(getName(index), capacity[index], la[index], lo[index]);
+    }
+
+    public Location get(int index, String[] palette) {
+        int cluster = assignment[index];
+        if (cluster < 0 || cluster >= palette.length) {
+            return get(index);
+        }
+        return new Location(getName(index), capacity[index], la[index], lo[index], palette[cluster]);
+    }
+
+    public List<Location> toLocations(String[] palette) {
+        return toLocations(palette, 0, size);
+    }
+
+    public List<Location> toLocations(String[] palette, int start, int end) {
+        List<Location> locations = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            locations.add(get(i, palette));
+        }
+        return locations;
+    }
+}
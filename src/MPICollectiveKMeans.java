@@ -0,0 +1,219 @@
+import mpi.MPI;
+import mpi.MPIException;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+//every rank loads the same locations and assigns only its own shard, rank 0 seeds and broadcasts the centroids
+//once, then each iteration sums and counts of all ranks are combined with Allreduce, so every rank computes
+//the same new centroids and nothing is sent point to point or as JSON while iterating
+public class MPICollectiveKMeans implements KMeansAlgorithm {
+    private static final int LEAVES_PER_THREAD = 4;
+    private static final int MAX_ITERATIONS = 100;
+
+    private final int k;
+    private final LocationStore locations;
+    private final AssignmentMode mode;
+    private final ForkJoinPool pool;
+    private final Random random = new Random(12345L); // fiksni seed
+    private final int rank;
+    private final int size;
+    private Location[] centroids; // only set on rank 0 until fit() broadcasts them
+    private String[] palette;
+    private int iterations;
+    private final FitTracker tracker = new FitTracker("MPICollectiveKMeans");
+
+    public MPICollectiveKMeans(int k, LocationStore locations) throws MPIException {
+        this(k, locations, AssignmentMode.STANDARD, new RandomInitializer());
+    }
+
+    public MPICollectiveKMeans(int k, LocationStore locations, AssignmentMode mode, CentroidInitializer initializer) throws MPIException {
+        this.k = k;
+        this.locations = locations;
+        this.mode = mode;
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.rank = MPI.COMM_WORLD.Rank();
+        this.size = MPI.COMM_WORLD.Size();
+
+        if (rank == 0) {
+            this.centroids = initializer.initialize(locations, k, random);
+            this.palette = Palette.of(centroids);
+        }
+    }
+
+    @Override
+    public void fit() {
+        try {
+            run();
+        } catch (MPIException e) {
+            throw new RuntimeException("MPI fit failed on rank " + rank, e);
+        }
+    }
+
+    private void run() throws MPIException {
+        broadcastCentroids();
+
+        int n = locations.size();
+        int start = shardStart(rank, n);
+        int end = shardStart(rank + 1, n);
+
+        int shard = Math.max(1, end - start);
+        int leaves = Math.max(1, Math.min(shard, pool.getParallelism() * LEAVES_PER_THREAD));
+        int leafSize = (shard + leaves - 1) / leaves;
+        double[][] sums = new double[leaves][k * 3];
+        long[][] counts = new long[leaves][k];
+        double[] centroidData = new double[k * 3];
+
+        // sum la, sum lo, sum capacity, count for each cluster, counts fit exactly in a double
+        // then points reassigned and inertia of the shard, so the stats cover all ranks
+        double[] local = new double[k * 4 + 2];
+        double[] global = new double[k * 4 + 2];
+
+        BoundedAssignment bounds = BoundedAssignment.create(mode, locations, k);
+        DistanceKernel kernel = DistanceKernel.create(mode);
+        AssignmentTask.Tally tally = new AssignmentTask.Tally(n, leaves);
+        boolean converged = false;
+        tracker.start(n, k);
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            iterations = iteration + 1;
+            long assignStart = tracker.startIteration();
+            if (bounds != null) {
+                bounds.update(centroids);
+            }
+
+            for (int i = 0; i < k; i++) {
+                centroidData[i * 3] = centroids[i].getLa();
+                centroidData[i * 3 + 1] = centroids[i].getLo();
+                centroidData[i * 3 + 2] = centroids[i].getCapacity();
+            }
+
+            if (start < end) {
+                pool.invoke(new AssignmentTask(locations, centroidData, bounds, kernel, sums, counts, start, end, leafSize, 0, leaves, tally));
+                for (int i = 0; i < k; i++) {
+                    local[i * 4] = sums[0][i * 3];
+                    local[i * 4 + 1] = sums[0][i * 3 + 1];
+                    local[i * 4 + 2] = sums[0][i * 3 + 2];
+                    local[i * 4 + 3] = counts[0][i];
+                }
+                local[k * 4] = tally.reassigned();
+                local[k * 4 + 1] = tally.inertia();
+            } else {
+                Arrays.fill(local, 0);
+            }
+
+            long networkStart = System.nanoTime();
+            MPI.COMM_WORLD.Allreduce(local, 0, global, 0, local.length, MPI.DOUBLE, MPI.SUM);
+
+            //same global sums on every rank, so every rank takes the same decision to stop
+            long reduceStart = System.nanoTime();
+            boolean changed = false;
+            double shift = 0;
+            Location[] newCentroids = new Location[k];
+            for (int i = 0; i < k; i++) {
+                double count = global[i * 4 + 3];
+                newCentroids[i] = count == 0 ? new Location("Centroid", 0, 0, 0)
+                        : new Location("Centroid", global[i * 4 + 2] / count, global[i * 4] / count, global[i * 4 + 1] / count);
+
+                if (!areEqual(centroids[i], newCentroids[i])) {
+                    changed = true;
+                }
+                shift = Math.max(shift, centroids[i].distance(newCentroids[i]));
+            }
+            centroids = newCentroids;
+
+            tracker.iteration(iteration, networkStart - assignStart, System.nanoTime() - reduceStart, reduceStart - networkStart, 0,
+                    (long) global[k * 4], shift, global[k * 4 + 1], local.length * 8L);
+            if (!changed) {
+                converged = true;
+                break;
+            }
+        }
+
+        gatherLabels(n);
+        tracker.finish(converged);
+    }
+
+    //la, lo, capacity and the palette color as 0xRRGGBB for each centroid
+    private void broadcastCentroids() throws MPIException {
+        double[] buffer = new double[k * 4];
+        if (rank == 0) {
+            for (int i = 0; i < k; i++) {
+                buffer[i * 4] = centroids[i].getLa();
+                buffer[i * 4 + 1] = centroids[i].getLo();
+                buffer[i * 4 + 2] = centroids[i].getCapacity();
+                buffer[i * 4 + 3] = Integer.parseInt(palette[i].substring(1), 16);
+            }
+        }
+
+        MPI.COMM_WORLD.Bcast(buffer, 0, buffer.length, MPI.DOUBLE, 0);
+
+        centroids = new Location[k];
+        palette = new String[k];
+        for (int i = 0; i < k; i++) {
+            centroids[i] = new Location("Centroid", buffer[i * 4 + 2], buffer[i * 4], buffer[i * 4 + 1]);
+            palette[i] = String.format("#%06X", (int) buffer[i * 4 + 3]);
+        }
+    }
+
+    //rank 0 gets the cluster id of every location for export
+    private void gatherLabels(int n) throws MPIException {
+        int[] shardSizes = new int[size];
+        int[] displacements = new int[size];
+        for (int r = 0; r < size; r++) {
+            displacements[r] = shardStart(r, n);
+            shardSizes[r] = shardStart(r + 1, n) - displacements[r];
+        }
+
+        int[] own = Arrays.copyOfRange(locations.assignment(), displacements[rank], displacements[rank] + shardSizes[rank]);
+        MPI.COMM_WORLD.Gatherv(own, 0, own.length, MPI.INT, locations.assignment(), 0, shardSizes, displacements, MPI.INT, 0);
+    }
+
+    private int shardStart(int shard, int n) {
+        return (int) ((long) n * shard / size);
+    }
+
+    private boolean areEqual(Location a, Location b) {
+        final double different = 0.000001;
+        return Math.abs(a.getLa() - b.getLa()) < different &&
+                Math.abs(a.getLo() - b.getLo()) < different &&
+                Math.abs(a.getCapacity() - b.getCapacity()) < different;
+    }
+
+    @Override
+    public Location[] getCentroids() {
+        return Palette.colored(centroids, palette);
+    }
+
+    //complete on rank 0 only, other ranks hold the labels of their own shard
+    @Override
+    public int[] getLabels() {
+        return Arrays.copyOf(locations.assignment(), locations.size());
+    }
+
+    @Override
+    public String[] getPalette() {
+        return palette;
+    }
+
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public FitStats getStats() {
+        return tracker.last();
+    }
+
+    @Override
+    public void addListener(FitListener listener) {
+        tracker.addListener(listener);
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
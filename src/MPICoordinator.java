@@ -1,27 +1,40 @@
 import mpi.MPI;
 import mpi.MPIException;
+import mpi.Request;
+import mpi.Status;
 import javax.json.*;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.LockSupport;
 
 public class MPICoordinator {
     private final Random random = new Random(12345L); // Fixed seed
-    private final List<Location> locations;
+    private final LocationStore locations;
     private Location[] centroids;
+    private final String[] palette;
+    private int iterations;
+    private final ForkJoinPool pool; // coordinator shard
+    private static final long POLL_NANOS = 50_000; // replies are checked this often while the own shard runs
 
-    public MPICoordinator(int k, List<Location> locations) throws MPIException {
-        this.locations = locations;
-        this.centroids = new Location[k];
+    public MPICoordinator(int k, LocationStore locations) throws MPIException {
+        this(k, locations, new RandomInitializer());
+    }
 
-        for (int i = 0; i < k; i++) {
-            this.centroids[i] = locations.get(random.nextInt(locations.size()));
-            this.centroids[i].setColor(generateRandomColor());
-        }
+    public MPICoordinator(int k, LocationStore locations, CentroidInitializer initializer) throws MPIException {
+        this.locations = locations;
+        this.centroids = initializer.initialize(locations, k, random);
+        this.palette = Palette.of(centroids);
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
     }
 
     public void shutdown() throws MPIException {
+        pool.shutdown();
         if (MPI.COMM_WORLD.Rank() == 0) {
             // Send termination signal to all peers
             for (int i = 1; i < MPI.COMM_WORLD.Size(); i++) {
@@ -39,7 +52,6 @@ public class MPICoordinator {
                     .add("capacity", centroid.getCapacity())
                     .add("la", centroid.getLa())
                     .add("lo", centroid.getLo())
-                    .add("color", centroid.getColor())
                     .build();
             centroidsBuilder.add(centroidJson);
         }
@@ -66,7 +78,7 @@ public class MPICoordinator {
             // === Coordinator logic ===
             int serverCount = size - 1;
             int locationCount = locations.size();
-            int partitionSize = (locationCount + serverCount - 1) / serverCount;
+            AdaptivePartitioner partitioner = new AdaptivePartitioner(size, locationCount); // rank 0 owns a shard too
 
             // === 1. Broadcast location count ===
             char[] payload = new char[64];
@@ -89,46 +101,65 @@ public class MPICoordinator {
             // === 3. K-Means iterations ===
             int maxIterations = 100;
             for (int iter = 0; iter < maxIterations; iter++) {
+                iterations = iter + 1;
                 List<List<PartialCentroid>> matrix = new ArrayList<>();
                 for (int i = 0; i < centroids.length; i++) {
                     matrix.add(new ArrayList<>());
                 }
 
-                // === 3.1 Send partitioned data to workers ===
-                for (int i = 0; i < serverCount; i++) {
-                    int start = i * partitionSize;
-                    int end = Math.min(start + partitionSize, locationCount);
+                // === 3.1 Send partitioned data to workers, shard 0 belongs to the coordinator ===
+                List<Request> sends = new ArrayList<>();
+                long sent = System.nanoTime();
+                int pending = 0;
+                for (int i = 1; i < size; i++) {
+                    int start = partitioner.start(i);
+                    int end = partitioner.end(i);
                     if (start >= end) continue;
 
-                    String json = createJsonPayload(start, end, centroids);
-                    String message = "KMEANS " + json;
-                    char[] msg = message.toCharArray();
-
-                    MPI.COMM_WORLD.Send(msg, 0, msg.length, MPI.CHAR, i + 1, 1);
+                    char[] msg = ("KMEANS " + createJsonPayload(start, end, centroids)).toCharArray();
+                    sends.add(MPI.COMM_WORLD.Isend(msg, 0, msg.length, MPI.CHAR, i, 1));
+                    pending++;
                 }
 
-                // === 3.2 Receive partial results ===
-                for (int i = 0; i < serverCount; i++) {
-                    int start = i * partitionSize;
-                    int end = Math.min(start + partitionSize, locationCount);
-                    if (start >= end) continue;
-
-                    char[] buffer = new char[4096];
-                    MPI.COMM_WORLD.Recv(buffer, 0, buffer.length, MPI.CHAR, i + 1, 2);
+                // === 3.2 Own shard while workers compute, then partials in arrival order ===
+                List<List<PartialCentroid>> partialsByRank = new ArrayList<>(Collections.nCopies(size, null));
+                Location[] shardCentroids = centroids;
+                ForkJoinTask<List<PartialCentroid>> ownShard = pool.submit(() -> {
+                    long computeStart = System.nanoTime();
+                    List<PartialCentroid> partials = MPIMain.computeShard(pool, locations, 0, partitioner.end(0), shardCentroids);
+                    partitioner.record(0, partitioner.end(0), (System.nanoTime() - computeStart) / 1_000_000.0);
+                    return partials;
+                });
+
+                //replies are polled while the own shard runs, so each one is timed when it arrives
+                for (int n = 0; n < pending; ) {
+                    Status status = ownShard.isDone() ? MPI.COMM_WORLD.Probe(MPI.ANY_SOURCE, 2) : MPI.COMM_WORLD.Iprobe(MPI.ANY_SOURCE, 2);
+                    if (status == null) {
+                        LockSupport.parkNanos(POLL_NANOS);
+                        continue;
+                    }
+                    n++;
+                    int source = status.source;
+                    partialsByRank.set(source, parsePartialCentroids(receive(source, 2).trim()));
+                    partitioner.record(source, partitioner.end(source) - partitioner.start(source), (System.nanoTime() - sent) / 1_000_000.0);
+                }
+                partialsByRank.set(0, ownShard.join());
+                Request.Waitall(sends.toArray(new Request[0]));
 
-                    String response = new String(buffer).trim();
-                    List<PartialCentroid> partials = parsePartialCentroids(response);
+                for (List<PartialCentroid> partials : partialsByRank) {
+                    if (partials == null) continue;
                     for (int k = 0; k < partials.size(); k++) {
                         matrix.get(k).add(partials.get(k));
                     }
                 }
+                partitioner.rebalance();
 
                 // === 3.3 Recalculate centroids ===
                 boolean changed = false;
                 Location[] newCentroids = new Location[centroids.length];
                 for (int i = 0; i < centroids.length; i++) {
                     Location oldC = centroids[i];
-                    Location newC = calculateWeightedCentroid(matrix.get(i), oldC.getColor());
+                    Location newC = calculateWeightedCentroid(matrix.get(i));
                     if (!areEqual(oldC, newC)) changed = true;
                     newCentroids[i] = newC;
                 }
@@ -141,32 +172,26 @@ public class MPICoordinator {
             }
 
             // === 4. Send LOCATION command to recolor points ===
-            for (int i = 0; i < serverCount; i++) {
-                int start = i * partitionSize;
-                int end = Math.min(start + partitionSize, locationCount);
+            List<Request> sends = new ArrayList<>();
+            for (int i = 1; i < size; i++) {
+                int start = partitioner.start(i);
+                int end = partitioner.end(i);
                 if (start >= end) continue;
 
-                String json = createJsonPayload(start, end, centroids);
-                String message = "LOCATION " + json;
-                char[] msg = message.toCharArray();
-
-                MPI.COMM_WORLD.Send(msg, 0, msg.length, MPI.CHAR, i + 1, 1);
+                char[] msg = ("LOCATION " + createJsonPayload(start, end, centroids)).toCharArray();
+                sends.add(MPI.COMM_WORLD.Isend(msg, 0, msg.length, MPI.CHAR, i, 1));
             }
 
-            // === 5. Receive updated points and replace local ones ===
-            for (int i = 0; i < serverCount; i++) {
-                int start = i * partitionSize;
-                int end = Math.min(start + partitionSize, locationCount);
+            // === 5. Label own shard, then receive cluster ids and color local points ===
+            ClusterLabels.apply(locations, 0, ClusterLabels.assign(locations, 0, partitioner.end(0), centroids, new ScalarDistanceKernel()));
+            for (int i = 1; i < size; i++) {
+                int start = partitioner.start(i);
+                int end = partitioner.end(i);
                 if (start >= end) continue;
 
-                char[] buffer = new char[8192];
-                MPI.COMM_WORLD.Recv(buffer, 0, buffer.length, MPI.CHAR, i + 1, 2);
-                String response = new String(buffer).trim();
-                List<Location> updated = parseLocations(response);
-                for (int j = start; j < end; j++) {
-                    locations.set(j, updated.get(j - start));
-                }
+                ClusterLabels.apply(locations, start, ClusterLabels.fromJson(receive(i, 2).trim()));
             }
+            Request.Waitall(sends.toArray(new Request[0]));
 
         } else {
             // === Worker logic ===
@@ -175,24 +200,15 @@ public class MPICoordinator {
         }
     }
 
-    public static List<Location> parseLocations(String jsonResponse) {
-        List<Location> locations = new ArrayList<>();
-        try (JsonReader reader = Json.createReader(new StringReader(jsonResponse))) {
-            JsonArray jsonArray = reader.readArray();
-            for (JsonObject obj : jsonArray.getValuesAs(JsonObject.class)) {
-                String name = obj.getString("name");
-                double capacity = obj.getJsonNumber("capacity").doubleValue();
-                double la = obj.getJsonNumber("la").doubleValue();
-                double lo = obj.getJsonNumber("lo").doubleValue();
-                String color = obj.getString("color");
-                Location location = new Location(name, capacity, la, lo, color);
-                locations.add(location);
-            }
-        }
-        return locations;
+    //buffer sized from the pending message, fixed buffers cut long responses
+    static String receive(int source, int tag) throws MPIException {
+        Status status = MPI.COMM_WORLD.Probe(source, tag);
+        char[] buffer = new char[status.Get_count(MPI.CHAR)];
+        MPI.COMM_WORLD.Recv(buffer, 0, buffer.length, MPI.CHAR, source, tag);
+        return new String(buffer);
     }
 
-    public Location calculateWeightedCentroid(List<PartialCentroid> partials, String color) {
+    public Location calculateWeightedCentroid(List<PartialCentroid> partials) {
         double sumLa = 0, sumLo = 0, sumCapacity = 0;
         int totalCount = 0;
 
@@ -204,10 +220,10 @@ public class MPICoordinator {
         }
 
         if (totalCount == 0) {
-            return new Location("Centroid", 0, 0, 0, color);
+            return new Location("Centroid", 0, 0, 0);
         }
 
-        return new Location("Centroid", sumCapacity / totalCount, sumLa / totalCount, sumLo / totalCount, color);
+        return new Location("Centroid", sumCapacity / totalCount, sumLa / totalCount, sumLo / totalCount);
     }
 
     public static List<PartialCentroid> parsePartialCentroids(String json) {
@@ -220,8 +236,7 @@ public class MPICoordinator {
                 double lo = c.getJsonNumber("lo").doubleValue();
                 double capacity = c.getJsonNumber("capacity").doubleValue();
                 int count = c.getInt("count");
-                String color = c.getString("color");
-                Location location = new Location("Centroid", capacity, la, lo, color);
+                Location location = new Location("Centroid", capacity, la, lo);
                 PartialCentroid pc = new PartialCentroid(location, count);
                 list.add(pc);
             }
@@ -236,14 +251,19 @@ public class MPICoordinator {
                 Math.abs(a.getCapacity() - b.getCapacity()) < different;
     }
 
-    private String generateRandomColor() {
-        int r = random.nextInt(256);
-        int g = random.nextInt(256);
-        int b = random.nextInt(256);
-        return String.format("#%02X%02X%02X", r, g, b);
+    public Location[] getCentroids() {
+        return Palette.colored(centroids, palette);
+    }
+
+    public int[] getLabels() {
+        return Arrays.copyOf(locations.assignment(), locations.size());
     }
 
-    public Location[] getCentroids() {
-        return centroids;
+    public String[] getPalette() {
+        return palette;
+    }
+
+    public int getIterations() {
+        return iterations;
     }
 }
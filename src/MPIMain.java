@@ -1,5 +1,7 @@
 import mpi.MPI;
 import mpi.MPIException;
+import mpi.Request;
+import mpi.Status;
 
 import javax.json.*;
 import java.io.FileWriter;
@@ -11,31 +13,14 @@ import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
 
 public class MPIMain {
     private static final Random random = new Random(12345L);
-
-    //from json to location
-    public static List<Location> parseLocations(String jsonResponse) {
-        List<Location> locations = new ArrayList<>();
-
-        try (JsonReader reader = Json.createReader(new StringReader(jsonResponse))) {
-            JsonArray jsonArray = reader.readArray();
-
-            for (JsonObject obj : jsonArray.getValuesAs(JsonObject.class)) {
-                String name = obj.getString("name");
-                double capacity = obj.getJsonNumber("capacity").doubleValue();
-                double la = obj.getJsonNumber("la").doubleValue();
-                double lo = obj.getJsonNumber("lo").doubleValue();
-                String color = obj.getString("color");
-
-                Location location = new Location(name, capacity, la, lo, color);
-                locations.add(location);
-            }
-        }
-
-        return locations;
-    }
+    private static final long POLL_NANOS = 50_000; // worker replies are checked this often while rank 0 computes
 
     //write location to file
     public static void writeLocationsToFile(List<Location> locations, String filename) {
@@ -79,7 +64,7 @@ public class MPIMain {
     }
 
     //new centroid center
-    public static Location calculateWeightedCentroid(List<PartialCentroid> partials, String color) {
+    public static Location calculateWeightedCentroid(List<PartialCentroid> partials) {
         double sumLa = 0, sumLo = 0, sumCapacity = 0;
         int totalCount = 0;
 
@@ -91,22 +76,13 @@ public class MPIMain {
         }
 
         if (totalCount == 0) {
-            return new Location("Centroid", 0, 0, 0, color);
+            return new Location("Centroid", 0, 0, 0);
         }
 
-        return new Location("Centroid", sumCapacity / totalCount, sumLa / totalCount, sumLo / totalCount, color);
+        return new Location("Centroid", sumCapacity / totalCount, sumLa / totalCount, sumLo / totalCount);
     }
 
 
-    private static String generateRandomColor(Random random) {
-        int red = random.nextInt(256);
-        int green = random.nextInt(256);
-        int blue = random.nextInt(256);
-
-        // format for make random color #RRGGBB
-        return String.format("#%02X%02X%02X", red, green, blue);
-    }
-
     //from data to json
     private static String createJsonPayload(int start, int end, Location[] centroidsList) {
         JsonArrayBuilder centroidsBuilder = Json.createArrayBuilder();
@@ -116,7 +92,6 @@ public class MPIMain {
                     .add("capacity", centroid.getCapacity())
                     .add("la", centroid.getLa())
                     .add("lo", centroid.getLo())
-                    .add("color", centroid.getColor())
                     .build();
             centroidsBuilder.add(centroidJson);
         }
@@ -143,9 +118,7 @@ public class MPIMain {
                 double lo = c.getJsonNumber("lo").doubleValue();
                 double capacity = c.getJsonNumber("capacity").doubleValue();
                 int count = c.getInt("count");
-                String color = c.getString("color");
-
-                Location location = new Location("Centroid", capacity, la, lo, color);
+                Location location = new Location("Centroid", capacity, la, lo);
                 PartialCentroid pc = new PartialCentroid(location, count);
                 list.add(pc);
             }
@@ -154,6 +127,89 @@ public class MPIMain {
         return list;
     }
 
+    private static void fitCollective(int rank, int numberOfClusters, int accumulationSites) throws MPIException {
+        //every rank loads the same points, only the shard of the rank is assigned
+        LocationStore locations = new LocationStore(accumulationSites);
+        String filePath = Location.DATA_FILE;
+        Location.loadLocations(filePath, locations, accumulationSites, Runtime.getRuntime().availableProcessors());
+
+        CentroidInitializer initializer = CentroidInitializer.fromName(System.getProperty("kmeans.init", "random"));
+        MPICollectiveKMeans cluster = new MPICollectiveKMeans(numberOfClusters, locations, AssignmentMode.STANDARD, initializer);
+
+        long startTime = System.currentTimeMillis();
+        cluster.fit();
+        cluster.shutdown();
+
+        if (rank == 0) {
+            System.out.println("Fit time: " + (System.currentTimeMillis() - startTime) + " ms");
+            System.out.println(cluster.getStats());
+            writeLocationsToFile(locations.toLocations(cluster.getPalette()), "GUI_Location.json");
+            writeLocationsToFile(Arrays.asList(cluster.getCentroids()), "GUI_Centroid.json");
+        }
+    }
+
+    //assign [start, end) on rank 0, partials have the same form the workers send back
+    static List<PartialCentroid> computeShard(ForkJoinPool pool, LocationStore locations, int start, int end, Location[] centroids) {
+        int k = centroids.length;
+        double[] centroidData = new double[k * 3];
+        for (int i = 0; i < k; i++) {
+            centroidData[i * 3] = centroids[i].getLa();
+            centroidData[i * 3 + 1] = centroids[i].getLo();
+            centroidData[i * 3 + 2] = centroids[i].getCapacity();
+        }
+
+        List<PartialCentroid> partials = new ArrayList<>(k);
+        if (start >= end) {
+            for (int i = 0; i < k; i++) {
+                partials.add(new PartialCentroid(new Location("Centroid", 0, 0, 0), 0));
+            }
+            return partials;
+        }
+
+        int leaves = Math.max(1, Math.min(end - start, pool.getParallelism() * 4));
+        int leafSize = (end - start + leaves - 1) / leaves;
+        double[][] sums = new double[leaves][k * 3];
+        long[][] counts = new long[leaves][k];
+        pool.invoke(new AssignmentTask(locations, centroidData, null, new ScalarDistanceKernel(), sums, counts, start, end, leafSize, 0, leaves));
+
+        for (int i = 0; i < k; i++) {
+            int count = (int) counts[0][i];
+            Location mean = count == 0 ? new Location("Centroid", 0, 0, 0)
+                    : new Location("Centroid", sums[0][i * 3 + 2] / count, sums[0][i * 3] / count, sums[0][i * 3 + 1] / count);
+            partials.add(new PartialCentroid(mean, count));
+        }
+        return partials;
+    }
+
+    //takes whichever worker answers first, the result body is read right after its length
+    //while rank 0 still computes its own shard the requests are polled, so a reply is timed when it arrives
+    private static List<List<PartialCentroid>> receivePartials(Request[] pending, List<Integer> workers, int[][] resultLengths, int size,
+                                                               AdaptivePartitioner partitioner, long sent, Future<?> ownShard) throws MPIException {
+        List<List<PartialCentroid>> partialsByRank = new ArrayList<>(Collections.nCopies(size, null));
+        List<Integer> waiting = new ArrayList<>(workers);
+        Request[] requests = pending;
+
+        while (!waiting.isEmpty()) {
+            Status status = ownShard.isDone() ? Request.Waitany(requests) : Request.Testany(requests);
+            if (status == null) {
+                LockSupport.parkNanos(POLL_NANOS);
+                continue;
+            }
+            int rank = waiting.remove(status.index);
+
+            byte[] resultDataBuffer = new byte[resultLengths[rank][0]];
+            MPI.COMM_WORLD.Recv(resultDataBuffer, 0, resultDataBuffer.length, MPI.BYTE, rank, 4);
+            partialsByRank.set(rank, parsePartialCentroids(new String(resultDataBuffer)));
+            partitioner.record(rank, partitioner.end(rank) - partitioner.start(rank), (System.nanoTime() - sent) / 1_000_000.0);
+
+            //completed request is dropped so Waitany only sees pending ones
+            List<Request> rest = new ArrayList<>(Arrays.asList(requests));
+            rest.remove(status.index);
+            requests = rest.toArray(new Request[0]);
+        }
+        return partialsByRank;
+    }
+
     public static void main(String[] args) throws MPIException {
         MPI.Init(args);
 
@@ -173,20 +229,22 @@ public class MPIMain {
         int accumulationSites = Integer.parseInt(args[args.length - 2]);
         int ShowGUI = Integer.parseInt(args[args.length - 1]);
 
+        //-Dkmeans.mpi=collective, every rank fits its own shard and partial sums go through Allreduce
+        if ("collective".equals(System.getProperty("kmeans.mpi"))) {
+            fitCollective(rank, NumberOfClusters, accumulationSites);
+        }
         //master
-        if (rank == 0) {
+        else if (rank == 0) {
             //load data for calculation
-            List<Location> locations = new ArrayList<>();
-            String filePath = "/home/janko/89221073_k-means/K-means/src/germany.json";
-            Location.loadLocations(filePath, locations, accumulationSites);
-
-            //create reandom centroids
-            Location[] centroids = new Location[NumberOfClusters];
-            for (int i = 0; i < NumberOfClusters; i++) {
-                Location randomLocation = locations.get(random.nextInt(locations.size()));
-                centroids[i] = randomLocation;
-                centroids[i].setColor(generateRandomColor(random));
-            }
+            LocationStore locations = new LocationStore(accumulationSites);
+            String filePath = Location.DATA_FILE;
+            Location.loadLocations(filePath, locations, accumulationSites, Runtime.getRuntime().availableProcessors());
+
+            //create starting centroids, -Dkmeans.init=random|plusplus|parallel
+            CentroidInitializer initializer = CentroidInitializer.fromName(System.getProperty("kmeans.init", "random"));
+            Location[] centroids = initializer.initialize(locations, NumberOfClusters, random);
+            String[] palette = Palette.of(centroids); // colors are only needed for the GUI files
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors()); // rank 0 shard
 
             //set TIME from calculation
             long startTime = System.currentTimeMillis();
@@ -213,57 +271,63 @@ public class MPIMain {
 
                 int maxIterations = 100;
 
+                //rank 0 owns the first shard too, shard sizes follow the points per ms every rank reached
+                AdaptivePartitioner partitioner = new AdaptivePartitioner(size, locations.size());
+
                 for (int iter = 0; iter < maxIterations; iter++) {
                     //set list of list for final calculation of centroid
                     List<List<PartialCentroid>> matrix = new ArrayList<>();
                     for (int i = 0; i < centroids.length; i++) {
-                        matrix.add(Collections.synchronizedList(new ArrayList<>()));
+                        matrix.add(new ArrayList<>());
                     }
 
-                    //logic for dividing job
-                    int blockSize = (locations.size() + size - 2) / (size - 1);
-
+                    //send jobs without waiting, buffers stay referenced until Waitall
+                    List<Request> sends = new ArrayList<>();
+                    List<Integer> workers = new ArrayList<>();
+                    long sent = System.nanoTime();
                     for (int i = 1; i < size; i++) {
-                        int start = (i - 1) * blockSize;
-                        int end = Math.min(start + blockSize, locations.size());
+                        int start = partitioner.start(i);
+                        int end = partitioner.end(i);
                         if (start >= end) {
-                            break;
+                            continue;
                         }
 
                         //create payload for job
-                        String jsonPayload2 = createJsonPayload(start, end, copyCentroids);
-                        byte[] jsonBytes = jsonPayload2.getBytes();
-                        int length = jsonBytes.length;
-
-                        //send command
-                        int[] kmeansCommand = new int[]{2};
-                        MPI.COMM_WORLD.Send(kmeansCommand, 0, kmeansCommand.length, MPI.INT, i, 0);
-
-                        //send length of payload
-                        MPI.COMM_WORLD.Send(new int[]{length}, 0, 1, MPI.INT, i, 1);
-                        //send payload
-                        MPI.COMM_WORLD.Send(jsonBytes, 0, length, MPI.BYTE, i, 2);
+                        byte[] jsonBytes = createJsonPayload(start, end, copyCentroids).getBytes();
+                        sends.add(MPI.COMM_WORLD.Isend(new int[]{2}, 0, 1, MPI.INT, i, 0));
+                        sends.add(MPI.COMM_WORLD.Isend(new int[]{jsonBytes.length}, 0, 1, MPI.INT, i, 1));
+                        sends.add(MPI.COMM_WORLD.Isend(jsonBytes, 0, jsonBytes.length, MPI.BYTE, i, 2));
+                        workers.add(i);
                     }
 
-                    //wait and recive all data from privies send
-                    for (int i = 1; i < size; i++) {
-                        //get result length
-                        int[] resultLengthBuffer = new int[1];
-                        MPI.COMM_WORLD.Recv(resultLengthBuffer, 0, 1, MPI.INT, i, 3);
-                        int resultLength = resultLengthBuffer[0];
-
-                        //get result
-                        byte[] resultDataBuffer = new byte[resultLength];
-                        MPI.COMM_WORLD.Recv(resultDataBuffer, 0, resultLength, MPI.BYTE, i, 4);
-
-                        //parse result
-                        String resultJson = new String(resultDataBuffer);
-                        List<PartialCentroid> partials = parsePartialCentroids(resultJson);
-                        //insert in matrix list for final calculation centroid center
+                    //result lengths can arrive while rank 0 works on its own shard
+                    int[][] resultLengths = new int[size][1];
+                    Request[] pending = new Request[workers.size()];
+                    for (int w = 0; w < workers.size(); w++) {
+                        pending[w] = MPI.COMM_WORLD.Irecv(resultLengths[workers.get(w)], 0, 1, MPI.INT, workers.get(w), 3);
+                    }
+
+                    Location[] shardCentroids = copyCentroids;
+                    ForkJoinTask<List<PartialCentroid>> ownShard = pool.submit(() -> {
+                        long computeStart = System.nanoTime();
+                        List<PartialCentroid> partials = computeShard(pool, locations, 0, partitioner.end(0), shardCentroids);
+                        partitioner.record(0, partitioner.end(0), (System.nanoTime() - computeStart) / 1_000_000.0);
+                        return partials;
+                    });
+
+                    //parse results in the order they arrive, not in rank order
+                    List<List<PartialCentroid>> partialsByRank = receivePartials(pending, workers, resultLengths, size, partitioner, sent, ownShard);
+                    partialsByRank.set(0, ownShard.join());
+                    Request.Waitall(sends.toArray(new Request[0]));
+
+                    //fold in rank order so the sums do not depend on arrival order
+                    for (List<PartialCentroid> partials : partialsByRank) {
+                        if (partials == null) continue;
                         for (int k = 0; k < partials.size(); k++) {
                             matrix.get(k).add(partials.get(k));
                         }
                     }
+                    partitioner.rebalance();
 
                     boolean changed = false;
                     Location[] newCentroids = new Location[centroids.length];
@@ -271,7 +335,7 @@ public class MPIMain {
                     //calculate new centroid and check if he change position from the last time
                     for (int i = 0; i < centroids.length; i++) {
                         Location oldCentroid = copyCentroids[i];
-                        Location newCentroid = calculateWeightedCentroid(matrix.get(i), oldCentroid.getColor());
+                        Location newCentroid = calculateWeightedCentroid(matrix.get(i));
 
                         if (!areEqual(oldCentroid, newCentroid)) {
                             changed = true;
@@ -290,37 +354,30 @@ public class MPIMain {
 
                 //part for update location
                 //send info for getting location color for GUI representation
-                int blockSize = (locations.size() + size - 2) / (size - 1);
+                List<Request> sends = new ArrayList<>();
                 for (int i = 1; i < size; i++) {
-                    int start = (i - 1) * blockSize;
-                    int end = Math.min(start + blockSize, locations.size());
+                    int start = partitioner.start(i);
+                    int end = partitioner.end(i);
                     if (start >= end) {
-                        break;
+                        continue;
                     }
 
                     //payload is similar like up
-                    String jsonPayload2 = createJsonPayload(start, end, copyCentroids);
-
-                    byte[] jsonBytes = jsonPayload2.getBytes();
-                    int length = jsonBytes.length;
-
-                    //activate command
-                    int[] kmeansCommand = new int[]{3};
-                    MPI.COMM_WORLD.Send(kmeansCommand, 0, kmeansCommand.length, MPI.INT, i, 0);
-
-                    //send length
-                    MPI.COMM_WORLD.Send(new int[]{length}, 0, 1, MPI.INT, i, 1);
-
-                    //send payload
-                    MPI.COMM_WORLD.Send(jsonBytes, 0, length, MPI.BYTE, i, 2);
+                    byte[] jsonBytes = createJsonPayload(start, end, copyCentroids).getBytes();
+                    sends.add(MPI.COMM_WORLD.Isend(new int[]{3}, 0, 1, MPI.INT, i, 0));
+                    sends.add(MPI.COMM_WORLD.Isend(new int[]{jsonBytes.length}, 0, 1, MPI.INT, i, 1));
+                    sends.add(MPI.COMM_WORLD.Isend(jsonBytes, 0, jsonBytes.length, MPI.BYTE, i, 2));
                 }
 
+                //own shard is labeled here while workers label theirs
+                ClusterLabels.apply(locations, 0, ClusterLabels.assign(locations, 0, partitioner.end(0), copyCentroids, new ScalarDistanceKernel()));
+
                 //recieving data
                 for (int i = 1; i < size; i++) {
-                    int start = (i - 1) * blockSize;
-                    int end = Math.min(start + blockSize, locations.size());
+                    int start = partitioner.start(i);
+                    int end = partitioner.end(i);
                     if (start >= end) {
-                        break;
+                        continue;
                     }
 
                     int[] resultLengthBuffer = new int[1];
@@ -330,25 +387,23 @@ public class MPIMain {
                     byte[] resultDataBuffer = new byte[resultLength];
                     MPI.COMM_WORLD.Recv(resultDataBuffer, 0, resultLength, MPI.BYTE, i, 4);
 
-                    String resultJson = new String(resultDataBuffer);
-                    List<Location> responseLocations = parseLocations(resultJson);
-
-                    for (int j = start; j < end; j++) {
-                        locations.set(j, responseLocations.get(j - start));
-                    }
+                    //only cluster ids come back, colors are taken from the palette when written to disk
+                    ClusterLabels.apply(locations, start, ClusterLabels.decode(resultDataBuffer));
                 }
+                Request.Waitall(sends.toArray(new Request[0]));
 
                 //put data on disk
-                writeLocationsToFile(locations, "GUI_Location.json");
+                writeLocationsToFile(locations.toLocations(palette), "GUI_Location.json");
 
                 //put centroids on disk
-                List<Location> centroidList = Arrays.asList(copyCentroids);
+                List<Location> centroidList = Arrays.asList(Palette.colored(copyCentroids, palette));
                 writeLocationsToFile(centroidList, "GUI_Centroid.json");
             }
 
             //get testing time
             long endTime = System.currentTimeMillis();
             System.out.println("Average fit time: " + ((endTime - startTime) / numberOfIteration) + " ms");
+            pool.shutdown();
 
             //shout down mpi processes
             for (int i = 1; i < size; i++) {
@@ -357,7 +412,8 @@ public class MPIMain {
             }
 
         } else{
-                List<Location> locations = new ArrayList<>();
+                DatasetRegistry datasets = new DatasetRegistry(); // loaded once, next fits reuse it
+                LocationStore locations = null;
                 ExecutorService executor = Executors.newCachedThreadPool();
 
                 while (true) {
@@ -369,8 +425,8 @@ public class MPIMain {
                     switch (command) {
                         case 1: // NUMBER
                             int numberOfLocation = commandMessage[1];
-                            String filePath = "/home/janko/89221073_k-means/K-means/src/germany.json";
-                            Location.loadLocations(filePath, locations, numberOfLocation);
+                            String filePath = Location.DATA_FILE;
+                            locations = datasets.get(datasets.load(filePath, numberOfLocation));
                             MPI.COMM_WORLD.Barrier();
                             break;
 
@@ -391,7 +447,7 @@ public class MPIMain {
 
                             int numberOfThreads = Runtime.getRuntime().availableProcessors();
                             int partSize = end - start;
-                            int chunkSize = (length + numberOfThreads - 1) / numberOfThreads;
+                            int chunkSize = (partSize + numberOfThreads - 1) / numberOfThreads;
 
                             int activeThreads = 0;
                             for (int i = 0; i < numberOfThreads; i++) {
@@ -411,8 +467,7 @@ public class MPIMain {
                                 int startIdx = start + i * chunkSize;
                                 int endIdx = Math.min(startIdx + chunkSize, end);
 
-                                List<Location> subList = locations.subList(startIdx, endIdx);
-                                executor.submit(new ClosestPointTask(subList, centroids, barrier, matrix));
+                                executor.submit(new ClosestPointTask(locations, startIdx, endIdx, centroids, barrier, matrix));
                             }
 
                             try {
@@ -435,20 +490,18 @@ public class MPIMain {
                                 }
 
                                 Location reduced = totalCount == 0
-                                        ? new Location("Centroid", 0, 0, 0, centroids[i].getColor())
+                                        ? new Location("Centroid", 0, 0, 0)
                                         : new Location(
                                         "Centroid",
                                         sumCapacity / totalCount,
                                         sumLa / totalCount,
-                                        sumLo / totalCount,
-                                        centroids[i].getColor());
+                                        sumLo / totalCount);
 
                                 JsonObject json = Json.createObjectBuilder()
                                         .add("name", reduced.getName())
                                         .add("capacity", reduced.getCapacity())
                                         .add("la", reduced.getLa())
                                         .add("lo", reduced.getLo())
-                                        .add("color", reduced.getColor())
                                         .add("count", totalCount)
                                         .build();
                                 reducedCentroids.add(json);
@@ -482,12 +535,11 @@ public class MPIMain {
                             int start3 = payload3.getStart();
                             int end3 = payload3.getEnd();
 
-                            // 3. Get location from offset (start, end)
-                            List<Location> subList = locations.subList(start3, end3);
+                            // 3. Cluster id of every location in (start, end)
+                            int[] labels = ClusterLabels.assign(locations, start3, end3, payload3.getCentroids(), new ScalarDistanceKernel());
 
-                            // 4. Comvert to json
-                            String subListJson = toJsonArray(subList);
-                            byte[] responseBytes = subListJson.getBytes();
+                            // 4. Encode ids, run length when it is shorter
+                            byte[] responseBytes = ClusterLabels.encode(labels);
 
                             // 5. Send length and data
                             MPI.COMM_WORLD.Send(new int[]{responseBytes.length}, 0, 1, MPI.INT, 0, 3);
@@ -510,12 +562,19 @@ public class MPIMain {
         if (rank == 0 && ShowGUI > 0) {
             System.out.println("Start GUI app...");
 
+            //-Dkmeans.javafx=<javafx-sdk>/lib, GuiApp gets the same classpath as this process
+            String javafx = System.getProperty("kmeans.javafx");
+            if (javafx == null) {
+                System.out.println("Set -Dkmeans.javafx to the JavaFX lib directory to start the GUI");
+                System.exit(0);
+            }
+
             try {
                 ProcessBuilder pb = new ProcessBuilder(
                         "java",
-                        "--module-path", "/home/janko/89221073_k-means/openjfx-24.0.1_linux-x64_bin-sdk/javafx-sdk-24.0.1/lib",
+                        "--module-path", javafx,
                         "--add-modules", "javafx.controls,javafx.fxml,javafx.web",
-                        "-cp", ".:/home/janko/89221073_k-means/mpj-v0_44/lib/mpj.jar:/home/janko/89221073_k-means/javax.json-1.0.4.jar",
+                        "-cp", System.getProperty("java.class.path"),
                         "GuiApp"
                 );
                 pb.inheritIO();
@@ -7,9 +7,7 @@ import javafx.scene.web.WebView;
 import javafx.stage.Stage;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 public class Main extends Application {
     @Override
@@ -17,55 +15,50 @@ public class Main extends Application {
         int accumulationSites = GetDialog(5000 ,"Number of accumulation point:");
         int NumberOfClusters = GetDialog(50, "Number of k cluster");
 
-        List<Location> locations = new ArrayList<>();
-        String filePath = "./src/germany.json";
-        Location.loadLocations(filePath, locations, accumulationSites);
+        LocationStore locations = new LocationStore(accumulationSites);
+        String filePath = Location.DATA_FILE;
+        Location.loadLocations(filePath, locations, accumulationSites, Runtime.getRuntime().availableProcessors());
 
-        int choice = GetDialog(1, "Select mode:\n1 - SingleThread\n2 - MultiThread\n3 - Distributed (not implemented)");
+        int choice = GetDialog(1, "Select mode:\n1 - SingleThread\n2 - MultiThread\n3 - Distributed\n4 - MiniBatch");
+        AssignmentMode assignmentMode = AssignmentMode.fromChoice(GetDialog(0, "Select assignment:\n0 - Standard\n1 - Bounded (auto)\n2 - Hamerly\n3 - Elkan\n4 - Vector"));
+        CentroidInitializer initializer = CentroidInitializer.fromChoice(GetDialog(0, "Select seeding:\n0 - Random\n1 - k-means++\n2 - k-means||"));
         int GraphicMod = GetDialog(1, "Do you want graphic mode?");
 
-        KMeansAlgorithm cluster = null;
-        long startTime = System.currentTimeMillis();
-        long maxDurationTestTime = 60 * 1_000; // 60 sec
-
-        int numberOfIteration = 3;
-
-        for (int i = 0; i < numberOfIteration; i++) {
-            if (!(System.currentTimeMillis() - startTime < maxDurationTestTime)) {
-                System.out.println("Not enough time for testing...");
+        // jedan fit za prikaz, ponovljena merenja su u BatchRunner
+        KMeansAlgorithm cluster;
+        switch (choice) {
+            case 1:
+                cluster = new KMeans(NumberOfClusters, locations, assignmentMode, initializer);
                 break;
-            }
-
-            switch (choice) {
-                case 1:
-                    cluster = new KMeans(NumberOfClusters, locations);
-                    break;
-                case 2:
-                    cluster = new ParallelKMeans(locations, NumberOfClusters);
-                    break;
-                case 3:
-                    cluster = new DistributedKMeans(NumberOfClusters, locations);
-                    break;
-                default:
-                    System.out.println("Invalid choice. Using SingleThread mode.");
-                    cluster = new KMeans(NumberOfClusters, locations);
-            }
-
-            cluster.fit();
+            case 2:
+                cluster = new ParallelKMeans(locations, NumberOfClusters, assignmentMode, Runtime.getRuntime().availableProcessors(), initializer);
+                break;
+            case 3:
+                cluster = new DistributedKMeans(NumberOfClusters, locations, initializer, WireProtocol.BINARY);
+                break;
+            case 4:
+                cluster = new MiniBatchKMeans(NumberOfClusters, locations, 1024, Runtime.getRuntime().availableProcessors(), assignmentMode, initializer);
+                break;
+            default:
+                System.out.println("Invalid choice. Using SingleThread mode.");
+                cluster = new KMeans(NumberOfClusters, locations);
         }
 
-        long endTime = System.currentTimeMillis();
-        System.out.println("Average fit time: " + ((endTime - startTime) / numberOfIteration) + " ms");
+        long startTime = System.currentTimeMillis();
+        cluster.fit();
+        System.out.println("Fit time: " + (System.currentTimeMillis() - startTime) + " ms, iterations: " + cluster.getIterations());
+        System.out.println(cluster.getStats());
 
         if (GraphicMod > 0){
             Location[] centroids = cluster.getCentroids();
+            String[] palette = cluster.getPalette();
 
         WebView webView = new WebView();
         WebEngine webEngine = webView.getEngine();
 
         webEngine.getLoadWorker().stateProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue == Worker.State.SUCCEEDED) {
-                webEngine.executeScript(CreateJS(locations, centroids).toString()); //execute my js code
+                webEngine.executeScript(CreateJS(locations.toLocations(palette), centroids).toString()); //execute my js code
             }
         });
 
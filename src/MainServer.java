@@ -1,7 +1,11 @@
 public class MainServer {
+    //usage: MainServer [port] [blocking|nio]
+    //-Dkmeans.peers=host:port,... are the peers AGGREGATE may be forwarded to, none by default
     public static void main(String[] args) {
-        int port = 7777;
-        Server server = new Server(port);
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        boolean nio = args.length > 1 && args[1].equalsIgnoreCase("nio");
+
+        Server server = nio ? new NioServer(port) : new Server(port);
         server.start();
     }
 }
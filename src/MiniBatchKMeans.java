@@ -0,0 +1,219 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+//mini-batch k-means: each step moves the centroids towards a random batch, rate 1 / points seen by the centroid
+//stops after -Dkmeans.minibatch.epochs passes over the data, when the smoothed batch inertia has not improved
+//for NO_IMPROVEMENT_STEPS steps, or with -Dkmeans.minibatch.tol > 0 when the centroids stop moving
+public class MiniBatchKMeans implements KMeansAlgorithm {
+    private static final int DEFAULT_EPOCHS = 10;
+    private static final double DEFAULT_TOL = 0; // a batch is noisy, a centroid test that fires early stops far from the optimum
+    private static final int NO_IMPROVEMENT_STEPS = 10;
+
+    private final int k;
+    private final LocationStore locations;
+    private final int batchSize;
+    private final Random random = new Random(12345L); // fiksni seed
+    private final ForkJoinPool pool; // null = sequential batch assignment
+    private final DistanceKernel kernel;
+    private Location[] centroids;
+    private final String[] palette;
+    private int iterations; // steps, one batch each
+    private final FitTracker tracker = new FitTracker("MiniBatchKMeans");
+
+    public MiniBatchKMeans(int k, LocationStore locations) {
+        this(k, locations, 1024, 1, AssignmentMode.STANDARD, new RandomInitializer());
+    }
+
+    public MiniBatchKMeans(int k, LocationStore locations, int batchSize, int numberOfThreads,
+                           AssignmentMode mode, CentroidInitializer initializer) {
+        this.k = k;
+        this.locations = locations;
+        this.batchSize = Math.min(batchSize, locations.size());
+        this.pool = numberOfThreads > 1 ? new ForkJoinPool(numberOfThreads) : null;
+        this.kernel = DistanceKernel.create(mode);
+        this.centroids = initializer.initialize(locations, k, random);
+        this.palette = Palette.of(centroids);
+    }
+
+    @Override
+    public void fit() {
+        double[] centroidData = toArray(centroids);
+        long[] seen = new long[k];
+
+        double[] batchLa = new double[batchSize];
+        double[] batchLo = new double[batchSize];
+        double[] batchCapacity = new double[batchSize];
+        int[] batchAssignment = new int[batchSize];
+
+        int n = locations.size();
+        long maxSteps = Math.max(1, (long) Math.ceil((double) Integer.getInteger("kmeans.minibatch.epochs", DEFAULT_EPOCHS) * n / batchSize));
+        double tol = Double.parseDouble(System.getProperty("kmeans.minibatch.tol", Double.toString(DEFAULT_TOL))) * meanVariance();
+        double alpha = Math.min(1.0, 2.0 * batchSize / (n + 1)); // weight of the newest batch in the smoothed inertia
+        double smoothedInertia = 0;
+        double bestInertia = Double.MAX_VALUE;
+        int stepsWithoutImprovement = 0;
+        boolean converged = false;
+        String stopReason = "step limit";
+        tracker.start(n, k);
+        for (int step = 0; step < maxSteps; step++) {
+            iterations = step + 1;
+            long assignStart = tracker.startIteration();
+            for (int b = 0; b < batchSize; b++) {
+                int p = random.nextInt(locations.size());
+                batchLa[b] = locations.getLa(p);
+                batchLo[b] = locations.getLo(p);
+                batchCapacity[b] = locations.getCapacity(p);
+            }
+
+            assign(batchLa, batchLo, batchCapacity, batchSize, centroidData, batchAssignment);
+
+            long reduceStart = System.nanoTime();
+            double[] previous = centroidData.clone();
+            double batchInertia = 0;
+            for (int b = 0; b < batchSize; b++) {
+                int c = batchAssignment[b];
+                double dLa = batchLa[b] - previous[c * 3];
+                double dLo = batchLo[b] - previous[c * 3 + 1];
+                double dCapacity = batchCapacity[b] - previous[c * 3 + 2];
+                batchInertia += dLa * dLa + dLo * dLo + dCapacity * dCapacity;
+                seen[c]++;
+                double eta = 1.0 / seen[c];
+                centroidData[c * 3] += eta * (batchLa[b] - centroidData[c * 3]);
+                centroidData[c * 3 + 1] += eta * (batchLo[b] - centroidData[c * 3 + 1]);
+                centroidData[c * 3 + 2] += eta * (batchCapacity[b] - centroidData[c * 3 + 2]);
+            }
+
+            //a batch is a sample, labels of the other points are not known until the end
+            double[] moved = squaredShifts(previous, centroidData);
+            tracker.iteration(step, reduceStart - assignStart, System.nanoTime() - reduceStart, 0, 0,
+                    -1, Math.sqrt(Arrays.stream(moved).max().orElse(0)), Double.NaN, 0);
+            if (step == 0) {
+                smoothedInertia = batchInertia / batchSize; // prvi korak samo inicijalizuje, centroidi su jos nasumicni
+                continue;
+            }
+            if (tol > 0 && Arrays.stream(moved).sum() <= tol) {
+                converged = true;
+                stopReason = "centroids stopped moving";
+                break;
+            }
+            smoothedInertia += alpha * (batchInertia / batchSize - smoothedInertia);
+            if (smoothedInertia < bestInertia) {
+                bestInertia = smoothedInertia;
+                stepsWithoutImprovement = 0;
+            } else if (++stepsWithoutImprovement >= NO_IMPROVEMENT_STEPS) {
+                converged = true;
+                stopReason = "no inertia improvement";
+                break;
+            }
+        }
+
+        Location[] newCentroids = new Location[k];
+        for (int c = 0; c < k; c++) {
+            newCentroids[c] = new Location("Centroid", centroidData[c * 3 + 2], centroidData[c * 3], centroidData[c * 3 + 1]);
+        }
+        centroids = newCentroids;
+
+        //final labels for every point
+        assign(locations.la(), locations.lo(), locations.capacity(), locations.size(), centroidData, locations.assignment());
+        tracker.finish(converged, stopReason);
+    }
+
+    private void assign(double[] la, double[] lo, double[] capacity, int size, double[] centroidData, int[] assignment) {
+        if (pool == null) {
+            kernel.assign(la, lo, capacity, 0, size, centroidData, assignment);
+            return;
+        }
+
+        int chunks = pool.getParallelism();
+        int chunkSize = (size + chunks - 1) / chunks;
+        pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int start = chunk * chunkSize;
+            int end = Math.min(start + chunkSize, size);
+            if (start < end) {
+                kernel.assign(la, lo, capacity, start, end, centroidData, assignment);
+            }
+        })).join();
+    }
+
+    //squared distance every centroid moved
+    private static double[] squaredShifts(double[] a, double[] b) {
+        double[] moved = new double[a.length / 3];
+        for (int c = 0; c < moved.length; c++) {
+            double dLa = a[c * 3] - b[c * 3];
+            double dLo = a[c * 3 + 1] - b[c * 3 + 1];
+            double dCapacity = a[c * 3 + 2] - b[c * 3 + 2];
+            moved[c] = dLa * dLa + dLo * dLo + dCapacity * dCapacity;
+        }
+        return moved;
+    }
+
+    //mean of the la, lo and capacity variances, tol is relative to it so it does not depend on units
+    private double meanVariance() {
+        int n = locations.size();
+        double[][] columns = {locations.la(), locations.lo(), locations.capacity()};
+        double total = 0;
+        for (double[] column : columns) {
+            double mean = 0;
+            for (int i = 0; i < n; i++) {
+                mean += column[i];
+            }
+            mean /= n;
+            double variance = 0;
+            for (int i = 0; i < n; i++) {
+                double d = column[i] - mean;
+                variance += d * d;
+            }
+            total += variance / n;
+        }
+        return total / columns.length;
+    }
+
+    private static double[] toArray(Location[] centroids) {
+        double[] data = new double[centroids.length * 3];
+        for (int i = 0; i < centroids.length; i++) {
+            data[i * 3] = centroids[i].getLa();
+            data[i * 3 + 1] = centroids[i].getLo();
+            data[i * 3 + 2] = centroids[i].getCapacity();
+        }
+        return data;
+    }
+
+    @Override
+    public Location[] getCentroids() {
+        return Palette.colored(centroids, palette);
+    }
+
+    @Override
+    public int[] getLabels() {
+        return Arrays.copyOf(locations.assignment(), locations.size());
+    }
+
+    @Override
+    public String[] getPalette() {
+        return palette;
+    }
+
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public FitStats getStats() {
+        return tracker.last();
+    }
+
+    @Override
+    public void addListener(FitListener listener) {
+        tracker.addListener(listener);
+    }
+
+    @Override
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
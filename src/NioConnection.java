@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+//buffers of one non-blocking client, splits input into JSON lines and binary frames
+//only touched from the selector thread
+public class NioConnection {
+    private final SocketChannel channel;
+    private final boolean local; // client on this host, see RequestHandler
+    private ByteBuffer input = ByteBuffer.allocate(8192);
+    private final Queue<ByteBuffer> output = new ArrayDeque<>();
+    private final Queue<Request> requests = new ArrayDeque<>();
+    private boolean busy = false; // one request of a connection at a time, so answers keep request order
+
+    //String or BinaryFrame, with the nanoTime it was parsed at, the wait for a compute thread starts there
+    public static class Request {
+        public final Object message;
+        public final long receivedAt;
+
+        Request(Object message, long receivedAt) {
+            this.message = message;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    public NioConnection(SocketChannel channel, boolean local) {
+        this.channel = channel;
+        this.local = local;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    public boolean isBusy() {
+        return busy;
+    }
+
+    public void setBusy(boolean busy) {
+        this.busy = busy;
+    }
+
+    public Request nextRequest() {
+        return requests.poll();
+    }
+
+    public boolean hasOutput() {
+        return !output.isEmpty();
+    }
+
+    //false when client closed the connection, IOException for a message that can never be accepted
+    public boolean read() throws IOException {
+        if (!input.hasRemaining()) {
+            if (input.capacity() >= BinaryProtocol.HEADER_SIZE + BinaryProtocol.MAX_REQUEST) {
+                throw new IOException("Message too long");
+            }
+            ByteBuffer bigger = ByteBuffer.allocate((int) Math.min((long) input.capacity() * 2, BinaryProtocol.HEADER_SIZE + BinaryProtocol.MAX_REQUEST));
+            input.flip();
+            bigger.put(input);
+            input = bigger;
+        }
+
+        int read = channel.read(input);
+        if (read == -1) {
+            return false;
+        }
+
+        input.flip();
+        long receivedAt = System.nanoTime();
+        while (parseOne(receivedAt)) {
+            // citaj sve kompletne poruke iz bafera
+        }
+        input.compact();
+        return true;
+    }
+
+    //parses one complete message at input position, leaves position untouched if message is not complete
+    private boolean parseOne(long receivedAt) throws IOException {
+        if (!input.hasRemaining()) {
+            return false;
+        }
+
+        int begin = input.position();
+        if (input.get(begin) == BinaryProtocol.MAGIC) {
+            if (input.remaining() < BinaryProtocol.HEADER_SIZE) {
+                return false;
+            }
+            ByteBuffer header = input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            header.position(begin + 1);
+            byte command = header.get();
+            int requestId = header.getInt();
+            int length = header.getInt();
+            if (length < 0 || length > BinaryProtocol.MAX_REQUEST) {
+                throw new IOException("Bad frame length: " + length);
+            }
+            if (input.remaining() < BinaryProtocol.HEADER_SIZE + length) {
+                return false;
+            }
+
+            byte[] body = new byte[length];
+            input.position(begin + BinaryProtocol.HEADER_SIZE);
+            input.get(body);
+            requests.add(new Request(new BinaryFrame(command, requestId, body), receivedAt));
+            return true;
+        }
+
+        for (int i = begin; i < input.limit(); i++) {
+            if (input.get(i) == '\n') {
+                byte[] line = new byte[i - begin];
+                input.get(line);
+                input.get(); // '\n'
+                requests.add(new Request(new String(line, StandardCharsets.UTF_8).replace("\r", ""), receivedAt));
+                return true;
+            }
+        }
+        if (input.remaining() > BinaryProtocol.MAX_REQUEST) {
+            throw new IOException("Line too long");
+        }
+        return false;
+    }
+
+    public void queue(ByteBuffer response) {
+        output.add(response);
+    }
+
+    //true when everything queued was written
+    public boolean write() throws IOException {
+        while (!output.isEmpty()) {
+            ByteBuffer head = output.peek();
+            channel.write(head);
+            if (head.hasRemaining()) {
+                return false;
+            }
+            output.poll();
+        }
+        return true;
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Failed to close socket: " + e.getMessage());
+        }
+    }
+}
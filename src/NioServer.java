@@ -0,0 +1,203 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//one selector thread does all accept/read/write, requests run on the bounded computePool
+//and their answers are handed back to the selector thread, thousands of idle clients cost no threads
+public class NioServer extends Server {
+    private final RequestHandler handler = new RequestHandler(this);
+    private final RequestHandler localHandler = new RequestHandler(this, true); // clients on this host, may ATTACH
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+
+    public NioServer(int port) {
+        super(port);
+    }
+
+    @Override
+    public void run() {
+        Thread.currentThread().setName("NioServer");
+
+        try {
+            selector = Selector.open();
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            System.out.println("Couldn't start server");
+            return;
+        }
+
+        System.out.println("nio server start to work");
+
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.out.println("Selector failed: " + e.getMessage());
+                return;
+            }
+
+            Runnable task;
+            while ((task = selectorTasks.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(key);
+                    }
+                } catch (IOException e) {
+                    System.out.println("Connection to peer lost: " + e.getMessage());
+                    close(key);
+                } catch (RuntimeException e) {
+                    // jedan los klijent ne sme da obori selector nit
+                    System.out.println("Dropping connection after error: " + e);
+                    close(key);
+                }
+            }
+        }
+    }
+
+    private void accept(SelectionKey key) throws IOException {
+        SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new NioConnection(channel, isLocal(channel.socket().getInetAddress())));
+        stats.connectionOpened();
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        NioConnection connection = (NioConnection) key.attachment();
+        if (!connection.read()) {
+            close(key);
+            return;
+        }
+        dispatch(key);
+        updateInterest(key);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        NioConnection connection = (NioConnection) key.attachment();
+        connection.write();
+        updateInterest(key);
+    }
+
+    //no reading while a request of the connection is in flight or its answer is not written yet,
+    //so the client waits in its own socket buffer instead of growing queues here
+    private static void updateInterest(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        if (connection.hasOutput()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(connection.isBusy() ? 0 : SelectionKey.OP_READ);
+        }
+    }
+
+    //sends next waiting request of the connection to compute workers
+    private void dispatch(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        if (connection.isBusy()) {
+            return;
+        }
+
+        NioConnection.Request request = connection.nextRequest();
+        if (request == null) {
+            return;
+        }
+
+        connection.setBusy(true);
+        computePool.execute(() -> process(connection.isLocal() ? localHandler : handler, request).thenAccept(response -> {
+            selectorTasks.add(() -> {
+                connection.setBusy(false);
+                if (!key.isValid()) {
+                    return;
+                }
+                connection.queue(response);
+                try {
+                    connection.write(); // usually all of it, then reading goes on without another select
+                } catch (IOException e) {
+                    System.out.println("Connection to peer lost: " + e.getMessage());
+                    close(key);
+                    return;
+                }
+                dispatch(key);
+                updateInterest(key);
+            });
+            selector.wakeup();
+        }));
+    }
+
+    //an AGGREGATE answer completes on the reader thread of its last child, no compute worker waits for the subtree
+    private CompletableFuture<ByteBuffer> process(RequestHandler handler, NioConnection.Request queued) {
+        Object request = queued.message;
+        try {
+            if (request instanceof BinaryFrame) {
+                return handler.handleAsync((BinaryFrame) request, queued.receivedAt)
+                        .thenApply(NioServer::toBuffer)
+                        .exceptionally(e -> error(request, e instanceof CompletionException ? e.getCause() : e));
+            }
+
+            String response = handler.handle((String) request, queued.receivedAt);
+            return CompletableFuture.completedFuture(ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(error(request, e));
+        }
+    }
+
+    private static ByteBuffer toBuffer(BinaryFrame frame) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            BinaryProtocol.writeFrame(out, frame);
+        } catch (IOException ignored) {
+            // ByteArrayOutputStream ne baca
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static ByteBuffer error(Object request, Throwable e) {
+        String message = "ERROR " + e.getMessage();
+        if (request instanceof BinaryFrame) {
+            return toBuffer(new BinaryFrame(BinaryProtocol.ERROR, ((BinaryFrame) request).getRequestId(), BinaryProtocol.encodeError(message)));
+        }
+        return ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        NioConnection connection = (NioConnection) key.attachment();
+        if (connection != null && connection.isOpen()) {
+            connection.close();
+            stats.connectionClosed();
+        }
+    }
+}
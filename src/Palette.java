@@ -0,0 +1,21 @@
+//cluster colors kept next to the model, fitting only tracks int labels
+//and colors are resolved when points or centroids are rendered or exported
+public class Palette {
+    //seeded centroids carry the colors chosen by the initializer
+    public static String[] of(Location[] centroids) {
+        String[] palette = new String[centroids.length];
+        for (int i = 0; i < centroids.length; i++) {
+            palette[i] = centroids[i].getColor();
+        }
+        return palette;
+    }
+
+    public static Location[] colored(Location[] centroids, String[] palette) {
+        Location[] colored = new Location[centroids.length];
+        for (int i = 0; i < centroids.length; i++) {
+            Location c = centroids[i];
+            colored[i] = new Location(c.getName(), c.getCapacity(), c.getLa(), c.getLo(), palette[i]);
+        }
+        return colored;
+    }
+}
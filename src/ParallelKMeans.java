@@ -2,90 +2,100 @@ import java.util.*;
 import java.util.concurrent.*;
 
 public class ParallelKMeans implements KMeansAlgorithm {
+    private static final int LEAVES_PER_THREAD = 4;
+
     private Location[] centroids;
-    private List<Location> locations;
+    private final String[] palette;
+    private int iterations;
+    private LocationStore locations;
     private final Random random = new Random(12345L); // fiksni seed
-    private ExecutorService executor = Executors.newCachedThreadPool();
+    private final ForkJoinPool pool;
+    private final AssignmentMode mode;
+    private final FitTracker tracker = new FitTracker("ParallelKMeans");
 
-    public ParallelKMeans(List<Location> locations, int NumberOfClusters) {
-            this.locations = locations;
-            this.centroids = new Location[NumberOfClusters];
+    public ParallelKMeans(LocationStore locations, int NumberOfClusters) {
+        this(locations, NumberOfClusters, AssignmentMode.STANDARD);
+    }
 
-            for (int j = 0; j < NumberOfClusters; j++) {
-                this.centroids[j] = locations.get(random.nextInt(locations.size()));
-                this.centroids[j].setColor(generateRandomColor());
-            }
+    public ParallelKMeans(LocationStore locations, int NumberOfClusters, AssignmentMode mode) {
+        this(locations, NumberOfClusters, mode, Runtime.getRuntime().availableProcessors());
     }
 
-    private String generateRandomColor() {
-        int r = random.nextInt(256);
-        int g = random.nextInt(256);
-        int b = random.nextInt(256);
-        return String.format("#%02X%02X%02X", r, g, b);
+    public ParallelKMeans(LocationStore locations, int NumberOfClusters, AssignmentMode mode, int numberOfThreads) {
+        this(locations, NumberOfClusters, mode, numberOfThreads, new RandomInitializer());
     }
 
+    public ParallelKMeans(LocationStore locations, int NumberOfClusters, AssignmentMode mode, int numberOfThreads, CentroidInitializer initializer) {
+            this.locations = locations;
+            this.mode = mode;
+            this.pool = new ForkJoinPool(numberOfThreads);
+            this.centroids = initializer.initialize(locations, NumberOfClusters, random);
+            this.palette = Palette.of(centroids);
+    }
 
     public void shutdown() {
-        executor.shutdown();
+        pool.shutdown();
     }
 
     public void fit() {
-        for (int iteration = 0; iteration < 100; iteration++) {
-            int numberOfThreads = Runtime.getRuntime().availableProcessors();
-            int size = locations.size();
-
-            int chunkSize = (size + numberOfThreads - 1) / numberOfThreads;
+        int k = centroids.length;
+        int size = locations.size();
+
+        // svaki list stabla ima svoje akumulatore, alociraju se jednom po fit-u
+        int leaves = Math.max(1, Math.min(size, pool.getParallelism() * LEAVES_PER_THREAD));
+        int leafSize = (size + leaves - 1) / leaves;
+        double[][] sums = new double[leaves][k * 3];
+        long[][] counts = new long[leaves][k];
+        double[] centroidData = new double[k * 3];
+
+        BoundedAssignment bounds = BoundedAssignment.create(mode, locations, k);
+        DistanceKernel kernel = DistanceKernel.create(mode);
+        AssignmentTask.Tally tally = new AssignmentTask.Tally(size, leaves);
+        boolean converged = false;
+        tracker.start(size, k);
 
-            // Koliko će niti zapravo biti pokrenuto (one koje imaju podlistu)
-            int activeThreads = 0;
-            for (int i = 0; i < numberOfThreads; i++) {
-                int start = i * chunkSize;
-                if (start >= size) break;
-                activeThreads++;
+        for (int iteration = 0; iteration < 100; iteration++) {
+            iterations = iteration + 1;
+            long assignStart = tracker.startIteration();
+            if (bounds != null) {
+                bounds.update(centroids);
             }
 
-            List<List<PartialCentroid>> matrix = new ArrayList<>();
-            for (int i = 0; i < centroids.length; i++) {
-                matrix.add(Collections.synchronizedList(new ArrayList<>()));
+            for (int i = 0; i < k; i++) {
+                centroidData[i * 3] = centroids[i].getLa();
+                centroidData[i * 3 + 1] = centroids[i].getLo();
+                centroidData[i * 3 + 2] = centroids[i].getCapacity();
             }
 
-            CyclicBarrier barrier = new CyclicBarrier(activeThreads + 1); // +1 za glavnu nit
-
-            for (int i = 0; i < activeThreads; i++) {
-                int start = i * chunkSize;
-                int end = Math.min(start + chunkSize, size);
-                List<Location> subList = locations.subList(start, end);
-                executor.submit(new ClosestPointTask(subList, centroids, barrier, matrix));
-            }
-
-            try {
-                barrier.await();
-            } catch (InterruptedException | BrokenBarrierException e) {
-                Thread.currentThread().interrupt();
-                return;
-            }
+            pool.invoke(new AssignmentTask(locations, centroidData, bounds, kernel, sums, counts, 0, size, leafSize, 0, leaves, tally));
 
+            long reduceStart = System.nanoTime();
             boolean changed = false;
-            Location[] newCentroids = new Location[centroids.length];
+            double shift = 0;
+            Location[] newCentroids = new Location[k];
 
-            for (int i = 0; i < centroids.length; i++) {
+            for (int i = 0; i < k; i++) {
                 Location oldCentroid = centroids[i];
-                Location newCentroid = calculateWeightedCentroid(matrix.get(i), oldCentroid.getColor());
+                Location newCentroid = calculateCentroid(sums[0], counts[0], i);
 
                 if (!areEqual(oldCentroid, newCentroid)) {
                     changed = true;
                 }
+                shift = Math.max(shift, oldCentroid.distance(newCentroid));
 
                 newCentroids[i] = newCentroid;
             }
 
             centroids = newCentroids;
 
+            tracker.iteration(iteration, reduceStart - assignStart, System.nanoTime() - reduceStart, 0, 0,
+                    tally.reassigned(), shift, tally.inertia(), 0);
             if (!changed) {
-                System.out.println("Converged at iteration: " + iteration);
+                converged = true;
                 break;
             }
         }
+        tracker.finish(converged);
     }
 
     private boolean areEqual(Location a, Location b) {
@@ -95,28 +105,45 @@ public class ParallelKMeans implements KMeansAlgorithm {
                 Math.abs(a.getCapacity() - b.getCapacity()) < different;
     }
 
-    public Location calculateWeightedCentroid(List<PartialCentroid> partials, String color) {
-        double sumLa = 0, sumLo = 0, sumCapacity = 0;
-        int totalCount = 0;
-
-        for (PartialCentroid pc : partials) {
-            sumLa += pc.centroid.getLa() * pc.count;
-            sumLo += pc.centroid.getLo() * pc.count;
-            sumCapacity += pc.centroid.getCapacity() * pc.count;
-            totalCount += pc.count;
-        }
+    private Location calculateCentroid(double[] sums, long[] counts, int cluster) {
+        long totalCount = counts[cluster];
 
         if (totalCount == 0) {
-            return new Location("Centroid", 0, 0, 0, color);
+            return new Location("Centroid", 0, 0, 0);
         }
 
-        return new Location("Centroid", sumCapacity / totalCount, sumLa / totalCount, sumLo / totalCount, color);
+        return new Location("Centroid", sums[cluster * 3 + 2] / totalCount, sums[cluster * 3] / totalCount, sums[cluster * 3 + 1] / totalCount);
     }
 
     @Override
     public Location[] getCentroids() {
-        return centroids;
+        return Palette.colored(centroids, palette);
+    }
+
+    @Override
+    public int[] getLabels() {
+        return Arrays.copyOf(locations.assignment(), locations.size());
+    }
+
+    @Override
+    public String[] getPalette() {
+        return palette;
+    }
+
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public FitStats getStats() {
+        return tracker.last();
+    }
+
+    @Override
+    public void addListener(FitListener listener) {
+        tracker.addListener(listener);
     }
 
 
-}
\ No newline at end of file
+}
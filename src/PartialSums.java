@@ -0,0 +1,36 @@
+import java.util.List;
+
+//one KMEANS or AGGREGATE answer as the peer computed it: la, lo, capacity sums and the count per cluster
+//the coordinator adds the answers and divides once, so no precision is lost on the way
+public class PartialSums {
+    public final double[] sums; // k * 3
+    public final long[] counts;
+
+    public PartialSums(double[] sums, long[] counts) {
+        this.sums = sums;
+        this.counts = counts;
+    }
+
+    //JSON answers carry means, back to sums
+    public static PartialSums fromMeans(List<PartialCentroid> partials) {
+        double[] sums = new double[partials.size() * 3];
+        long[] counts = new long[partials.size()];
+        for (int i = 0; i < partials.size(); i++) {
+            PartialCentroid partial = partials.get(i);
+            sums[i * 3] = partial.centroid.getLa() * partial.count;
+            sums[i * 3 + 1] = partial.centroid.getLo() * partial.count;
+            sums[i * 3 + 2] = partial.centroid.getCapacity() * partial.count;
+            counts[i] = partial.count;
+        }
+        return new PartialSums(sums, counts);
+    }
+
+    public void addTo(double[] totalSums, long[] totalCounts) {
+        for (int i = 0; i < sums.length; i++) {
+            totalSums[i] += sums[i];
+        }
+        for (int i = 0; i < counts.length; i++) {
+            totalCounts[i] += counts[i];
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+//coordinator side, one per request attempt: begins when the request is handed to the connection, ends when its
+//answer is decoded, so the duration is wire + peer + decode, encoding happened before and is a field
+//a speculative second attempt is a second event, an attempt that never answers is never committed
+@Name("kmeans.PartitionRequest")
+@Label("Partition Request")
+@Category({"K-Means", "Coordinator"})
+@Description("One KMEANS, AGGREGATE or LOCATION request of the coordinator and its answer")
+@StackTrace(false)
+public class PartitionRequestEvent extends jdk.jfr.Event {
+    @Label("Fit Id")
+    public long fitId;
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Partition")
+    @Description("First point of the range, the same number the peer reports")
+    public int partition;
+
+    @Label("Partition End")
+    public int partitionEnd;
+
+    @Label("Peer")
+    public String peer;
+
+    @Label("Command")
+    public String command;
+
+    @Label("Encode")
+    @Timespan
+    public long encodeNanos;
+
+    @Label("Decode")
+    @Timespan
+    public long decodeNanos;
+
+    @Label("Request Bytes")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Bytes")
+    @DataAmount
+    public long responseBytes;
+
+    //null when no recording wants the event, callers skip all tracing work then
+    public static PartitionRequestEvent start(long fitId, int iteration, int partition, int partitionEnd, String peer,
+                                              String command, long encodeNanos, long requestBytes) {
+        PartitionRequestEvent event = new PartitionRequestEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.fitId = fitId;
+        event.iteration = iteration;
+        event.partition = partition;
+        event.partitionEnd = partitionEnd;
+        event.peer = peer;
+        event.command = command;
+        event.encodeNanos = encodeNanos;
+        event.requestBytes = requestBytes;
+        event.begin();
+        return event;
+    }
+
+    public void finish(long responseBytes, long decodeNanos) {
+        end();
+        if (shouldCommit()) {
+            this.responseBytes = responseBytes;
+            this.decodeNanos = decodeNanos;
+            commit();
+        }
+    }
+}
@@ -1,13 +1,27 @@
+import java.util.List;
+
 public class Payload {
+    private int datasetId = -1;
     private int start;
     private int end;
     private Location[] centroids;
+    private List<AggregationNode> children = List.of(); // peers this one forwards to, AGGREGATE only
+    private long fitId;         // 0 = request is not traced
+    private int iteration = -1; // -1 = not part of an iteration (labels)
 
+    public int getDatasetId() { return datasetId; }
     public int getStart() { return start; }
     public int getEnd() { return end; }
     public Location[] getCentroids() { return centroids; }
+    public List<AggregationNode> getChildren() { return children; }
+    public long getFitId() { return fitId; }
+    public int getIteration() { return iteration; }
 
+    public void setDatasetId(int datasetId) { this.datasetId = datasetId; }
     public void setStart(int start) { this.start = start; }
     public void setEnd(int end) { this.end = end; }
     public void setCentroids(Location[] centroids) { this.centroids = centroids; }
+    public void setChildren(List<AggregationNode> children) { this.children = children; }
+    public void setFitId(long fitId) { this.fitId = fitId; }
+    public void setIteration(int iteration) { this.iteration = iteration; }
 }
\ No newline at end of file
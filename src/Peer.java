@@ -1,32 +1,44 @@
-import javax.json.*;
 import java.io.*;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.BrokenBarrierException;
-import java.util.concurrent.CyclicBarrier;
+import java.nio.charset.StandardCharsets;
 
+//blocking connection to one client, requests are answered in order by RequestHandler
 public class Peer implements Runnable {
     private Socket socket;
-    private BufferedReader peerReader;
-    private BufferedWriter peerWriter;
+    private BufferedInputStream peerInput;
+    private OutputStream peerOutput;
+    private final RequestHandler handler;
     private final Server server;
 
-    public Peer(Socket socket, Server server) throws IOException {
+    public Peer(Socket socket, Server server, boolean local) throws IOException {
         this.socket = socket;
         this.server = server;
+        this.handler = new RequestHandler(server, local);
 
-        InputStreamReader isr = new InputStreamReader(socket.getInputStream());
-        OutputStreamWriter osw = new OutputStreamWriter(socket.getOutputStream());
+        // bajtovi, jer na istom socketu moze doci i JSON linija i binarni frame
+        peerInput = new BufferedInputStream(socket.getInputStream());
+        peerOutput = new BufferedOutputStream(socket.getOutputStream());
+    }
 
-        peerReader = new BufferedReader(isr);
-        peerWriter = new BufferedWriter(osw);
+    //-1 when connection is closed
+    private int peekByte() throws IOException {
+        peerInput.mark(1);
+        int first = peerInput.read();
+        peerInput.reset();
+        return first;
     }
 
     public String waitForMessage() {
         try {
-            return peerReader.readLine();
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = peerInput.read()) != -1 && b != '\n') {
+                line.write(b);
+            }
+            if (b == -1 && line.size() == 0) {
+                return null;
+            }
+            return line.toString(StandardCharsets.UTF_8).replace("\r", "");
         } catch (IOException e) {
             System.out.println("Could not read message from peer: " + e.getMessage());
             return null;
@@ -35,163 +47,44 @@ public class Peer implements Runnable {
 
     public void sendMessage(String message) {
         try {
-            peerWriter.write(message + "\n");
-            peerWriter.flush();
+            peerOutput.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+            peerOutput.flush();
         } catch (IOException e) {
             System.out.println("Could not send message to peer..." + e.getMessage());
         }
     }
 
-    private String handleLocation(String data) {
-        Payload payload = JsonPayloadParser.parsePayload(data);
-        int start = payload.getStart();
-        int end = payload.getEnd();
-
-        List<Location> subList = server.locations.subList(start, end);
-
-        return  toJsonArray(subList);
-    }
-
-    private String toJsonArray(List<Location> locations) {
-        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
-        for (Location loc : locations) {
-            JsonObjectBuilder objBuilder = Json.createObjectBuilder()
-                    .add("name", loc.getName())
-                    .add("capacity", loc.getCapacity())
-                    .add("la", loc.getLa())
-                    .add("lo", loc.getLo())
-                    .add("color", loc.getColor());
-            arrayBuilder.add(objBuilder);
-        }
-
-        StringWriter writer = new StringWriter();
-        try (JsonWriter jsonWriter = Json.createWriter(writer)) {
-            jsonWriter.writeArray(arrayBuilder.build());
-        }
-
-        return writer.toString();
-    }
-
-    private String handleKMeans(String data) {
-        Payload payload = JsonPayloadParser.parsePayload(data);
-        int start = payload.getStart();
-        int end = payload.getEnd();
-        Location[] centroids = payload.getCentroids();
-
-        int numberOfThreads = Runtime.getRuntime().availableProcessors();
-        int size = end - start;
-        int chunkSize = (size + numberOfThreads - 1) / numberOfThreads;
-
-        System.out.println("size: " + size);
-        System.out.println("chunk size: " + chunkSize);
-
-
-        int activeThreads = 0;
-        for (int i = 0; i < numberOfThreads; i++) {
-            int startIndex = i * chunkSize;
-            if (startIndex >= size) break;
-            activeThreads++;
-        }
-
-        // Priprema matrice za delimične rezultate
-        List<List<PartialCentroid>> matrix = new ArrayList<>();
-        for (int i = 0; i < centroids.length; i++) {
-            matrix.add(Collections.synchronizedList(new ArrayList<>()));
-        }
-
-        CyclicBarrier barrier = new CyclicBarrier(activeThreads + 1);
-
-        // Pokretanje ClosestPointTask niti
-        for (int i = 0; i < activeThreads; i++) {
-            int startIdx = start + i * chunkSize;
-            int endIdx = Math.min(startIdx + chunkSize, end);
-
-            //if (startIdx >= endIdx) {break;}
-
-            List<Location> subList = server.locations.subList(startIdx, endIdx);
-            System.out.println("Thread " + i + ": from " + startIdx + " to " + endIdx + ", subList size = " + subList.size());
-            server.executor.submit(new ClosestPointTask(subList, centroids, barrier, matrix));
-        }
-
-        try {
-            barrier.await();
-        } catch (InterruptedException | BrokenBarrierException e) {
-            Thread.currentThread().interrupt();
-            return "erropr";
-        }
-
-        // djelomicni centroide
-        JsonArrayBuilder reducedCentroids = Json.createArrayBuilder();
-        for (int i = 0; i < centroids.length; i++) {
-            List<PartialCentroid> partials = matrix.get(i);
-            double sumLa = 0, sumLo = 0, sumCapacity = 0;
-            int totalCount = 0;
-
-            for (PartialCentroid pc : partials) {
-                sumLa += pc.centroid.getLa() * pc.count;
-                sumLo += pc.centroid.getLo() * pc.count;
-                sumCapacity += pc.centroid.getCapacity() * pc.count;
-                totalCount += pc.count;
-            }
-
-            Location reduced = totalCount == 0 ? new Location("Centroid", 0, 0, 0, centroids[i].getColor())
-                    : new Location(
-                    "Centroid",
-                    sumCapacity / totalCount,
-                    sumLa / totalCount,
-                    sumLo / totalCount,
-                    centroids[i].getColor());
-
-            JsonObject json = Json.createObjectBuilder()
-                    .add("name", reduced.getName())
-                    .add("capacity", reduced.getCapacity())
-                    .add("la", reduced.getLa())
-                    .add("lo", reduced.getLo())
-                    .add("color", reduced.getColor())
-                    .add("count", totalCount)
-                    .build();
-            reducedCentroids.add(json);
-        }
-
-        JsonObject result = Json.createObjectBuilder()
-                .add("centroids", reducedCentroids)
-                .build();
-
-        return result.toString();
-    }
-
     @Override
     public void run() {
+        server.stats.connectionOpened();
         while (true) {
-            String rawMessage = waitForMessage();
-            if (rawMessage == null) {
-                System.out.println("Connection to peer lost...");
+            int first;
+            try {
+                first = peekByte();
+            } catch (IOException e) {
+                System.out.println("Could not read message from peer: " + e.getMessage());
                 break;
             }
 
-            String[] parts = rawMessage.split(" ", 2);
-            String command = parts[0].toUpperCase();
-            String data = parts.length > 1 ? parts[1] : "";
-
-            String response;
-            switch (command) {
-                case "NUMBER":
-                    int num = Integer.parseInt(data.trim());
-                    server.loadLocationsFromDisk(num);
-                    response = "OK";
-                    break;
-                case "KMEANS":
-                    response = handleKMeans(data);
+            if (first == (BinaryProtocol.MAGIC & 0xFF)) {
+                try {
+                    BinaryFrame request = BinaryProtocol.readFrame(peerInput, BinaryProtocol.MAX_REQUEST);
+                    BinaryProtocol.writeFrame(peerOutput, handler.handle(request, System.nanoTime()));
+                } catch (IOException e) {
+                    System.out.println("Binary frame failed: " + e.getMessage());
                     break;
-                case "LOCATION":
-                    response = handleLocation(data);
-                    break;
-                default:
-                    response = "ERROR Unknown command: " + command;
+                }
+                continue;
+            }
+
+            String rawMessage = waitForMessage();
+            if (rawMessage == null) {
+                break; // klijent je zatvorio konekciju
             }
 
-            sendMessage(response); // Send back msg to sender
+            sendMessage(handler.handle(rawMessage, System.nanoTime())); // Send back msg to sender
         }
+        server.stats.connectionClosed();
 
         try {
             socket.close();
@@ -199,4 +92,4 @@ public class Peer implements Runnable {
             System.out.println("Failed to close socket: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//pipelined link to a peer, many requests can be in flight at once
+//binary responses are matched by request id, JSON responses by order since the peer answers in order
+//a request that misses its deadline closes the channel, a late JSON answer would be matched to the wrong request
+//subclasses only move bytes: a socket (PeerConnection) or mapped rings on the same host (SharedMemoryConnection)
+public abstract class PeerChannel {
+    private final Map<Integer, CompletableFuture<BinaryFrame>> pending = new ConcurrentHashMap<>();
+    private final Queue<CompletableFuture<String>> pendingText = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final Object writeLock = new Object();
+    protected final long deadlineMillis;
+    protected volatile boolean open = true;
+
+    //deadlineMillis <= 0 waits forever
+    protected PeerChannel(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    protected abstract void write(BinaryFrame frame) throws IOException;
+
+    //one request line without the trailing newline
+    protected abstract void write(String line) throws IOException;
+
+    protected abstract void closeTransport();
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public CompletableFuture<BinaryFrame> sendBinary(byte command, int requestId, byte[] payload) {
+        CompletableFuture<BinaryFrame> future = new CompletableFuture<>();
+        pending.put(requestId, future);
+        inFlight.incrementAndGet();
+
+        try {
+            synchronized (writeLock) {
+                write(new BinaryFrame(command, requestId, payload));
+            }
+        } catch (IOException e) {
+            if (pending.remove(requestId) != null) {
+                inFlight.decrementAndGet();
+            }
+            future.completeExceptionally(e);
+            close();
+        }
+        return withDeadline(future);
+    }
+
+    public CompletableFuture<String> sendText(String command, String payload) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        try {
+            synchronized (writeLock) {
+                // red u redu cekanja mora biti isti kao red na zici
+                pendingText.add(future);
+                inFlight.incrementAndGet();
+                write(command + " " + payload);
+            }
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            close();
+        }
+        return withDeadline(future);
+    }
+
+    private <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future) {
+        if (deadlineMillis <= 0) {
+            return future;
+        }
+
+        return future.orTimeout(deadlineMillis, TimeUnit.MILLISECONDS).whenComplete((response, e) -> {
+            if (e instanceof TimeoutException) {
+                close();
+            }
+        });
+    }
+
+    //called by the reader thread of the subclass
+    protected void received(BinaryFrame frame) {
+        CompletableFuture<BinaryFrame> future = pending.remove(frame.getRequestId());
+        if (future != null) {
+            inFlight.decrementAndGet();
+            future.complete(frame);
+        }
+    }
+
+    protected void received(String line) {
+        CompletableFuture<String> future = pendingText.poll();
+        if (future != null) {
+            inFlight.decrementAndGet();
+            future.complete(line);
+        }
+    }
+
+    protected void failAll(IOException cause) {
+        for (Integer requestId : pending.keySet()) {
+            CompletableFuture<BinaryFrame> future = pending.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+
+        CompletableFuture<String> future;
+        while ((future = pendingText.poll()) != null) {
+            future.completeExceptionally(cause);
+        }
+        inFlight.set(0);
+    }
+
+    public void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+
+        closeTransport();
+        failAll(new IOException("Connection closed"));
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+//one long lived socket to a peer, see PeerChannel for matching of pipelined responses
+public class PeerConnection extends PeerChannel {
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final BufferedInputStream in;
+
+    public PeerConnection(String host, int port) throws IOException {
+        this(host, port, 0);
+    }
+
+    //deadlineMillis <= 0 waits forever
+    public PeerConnection(String host, int port, long deadlineMillis) throws IOException {
+        super(deadlineMillis);
+        this.socket = new Socket();
+        this.socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        this.socket.setTcpNoDelay(true);
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.in = new BufferedInputStream(socket.getInputStream());
+
+        Thread reader = new Thread(this::readResponses, "PeerConnection-" + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    protected void write(BinaryFrame frame) throws IOException {
+        BinaryProtocol.writeFrame(out, frame);
+    }
+
+    @Override
+    protected void write(String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void readResponses() {
+        try {
+            while (open) {
+                in.mark(1);
+                int first = in.read();
+                if (first == -1) {
+                    throw new EOFException("Peer closed connection");
+                }
+                in.reset();
+
+                if (first == (BinaryProtocol.MAGIC & 0xFF)) {
+                    received(BinaryProtocol.readFrame(in));
+                } else {
+                    received(readLine());
+                }
+            }
+        } catch (IOException e) {
+            failAll(e);
+        } finally {
+            close();
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8).replace("\r", "");
+    }
+
+    @Override
+    protected void closeTransport() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println("Failed to close socket: " + e.getMessage());
+        }
+    }
+}
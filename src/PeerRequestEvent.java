@@ -0,0 +1,101 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+//peer side, one per request that carried a fit id, duration is the handler (decode + compute + encode),
+//queue wait happened before it began and is a field
+@Name("kmeans.PeerRequest")
+@Label("Peer Request")
+@Category({"K-Means", "Peer"})
+@Description("One request handled by a peer for a traced distributed fit")
+@StackTrace(false)
+public class PeerRequestEvent extends jdk.jfr.Event {
+    @Label("Fit Id")
+    public long fitId;
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Partition")
+    public int partition;
+
+    @Label("Partition End")
+    public int partitionEnd;
+
+    @Label("Peer")
+    public String peer;
+
+    @Label("Command")
+    public String command;
+
+    @Label("Queue")
+    @Timespan
+    public long queueNanos;
+
+    @Label("Decode")
+    @Timespan
+    public long decodeNanos;
+
+    @Label("Compute")
+    @Timespan
+    public long computeNanos;
+
+    @Label("Encode")
+    @Timespan
+    public long encodeNanos;
+
+    @Label("Request Bytes")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Bytes")
+    @DataAmount
+    public long responseBytes;
+
+    private transient long mark; // nanoTime of the last phase boundary
+
+    //null when no recording wants the event
+    public static PeerRequestEvent start(String peer, long receivedAt, long startedAt) {
+        PeerRequestEvent event = new PeerRequestEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.peer = peer;
+        event.queueNanos = startedAt - receivedAt;
+        event.mark = startedAt;
+        event.begin();
+        return event;
+    }
+
+    public void decoded(String command, Payload payload) {
+        long now = System.nanoTime();
+        this.command = command;
+        this.fitId = payload.getFitId();
+        this.iteration = payload.getIteration();
+        this.partition = payload.getStart();
+        this.partitionEnd = payload.getEnd();
+        this.decodeNanos = now - mark;
+        mark = now;
+    }
+
+    public void computed() {
+        long now = System.nanoTime();
+        this.computeNanos = now - mark;
+        mark = now;
+    }
+
+    //untraced requests (fit id 0: NUMBER, STATS, old coordinators) are dropped
+    public void finish(long requestBytes, long responseBytes) {
+        this.encodeNanos = System.nanoTime() - mark;
+        end();
+        if (fitId != 0 && shouldCommit()) {
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            commit();
+        }
+    }
+}
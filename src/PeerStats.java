@@ -0,0 +1,40 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+//prints the STATS of every peer, one JSON line each, the same works by hand with: echo STATS | nc host port
+//usage: PeerStats host:port [host:port ...] [reset]
+public class PeerStats {
+    public static void main(String[] args) throws IOException {
+        List<String> hosts = new ArrayList<>();
+        List<Integer> ports = new ArrayList<>();
+        boolean reset = false;
+        for (String arg : args) {
+            if (arg.equalsIgnoreCase("reset")) {
+                reset = true;
+                continue;
+            }
+            int colon = arg.lastIndexOf(':');
+            hosts.add(colon < 0 ? arg : arg.substring(0, colon));
+            ports.add(colon < 0 ? 7777 : Integer.parseInt(arg.substring(colon + 1)));
+        }
+        if (hosts.isEmpty()) {
+            System.out.println("Usage: PeerStats host:port [host:port ...] [reset]");
+            return;
+        }
+
+        DistributedKMeansClient client = new DistributedKMeansClient(hosts.toArray(new String[0]),
+                ports.stream().mapToInt(Integer::intValue).toArray(), 1, Transport.TCP);
+        try {
+            for (int i = 0; i < hosts.size(); i++) {
+                try {
+                    System.out.println(hosts.get(i) + ":" + ports.get(i) + " " + client.stats(i, reset));
+                } catch (IOException e) {
+                    System.out.println(hosts.get(i) + ":" + ports.get(i) + " unreachable: " + e.getMessage());
+                }
+            }
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+import java.util.Random;
+
+//k uniformly random locations, the original seeding
+public class RandomInitializer implements CentroidInitializer {
+    @Override
+    public Location[] initialize(LocationStore locations, int k, Random random) {
+        Location[] centroids = new Location[k];
+        for (int i = 0; i < k; i++) {
+            centroids[i] = locations.get(random.nextInt(locations.size()));
+            centroids[i].setColor(CentroidInitializer.randomColor(random));
+        }
+        return centroids;
+    }
+}
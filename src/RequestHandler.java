@@ -0,0 +1,285 @@
+import javax.json.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+//executes NUMBER / KMEANS / LOCATION against the server data, shared by every transport
+//(blocking Peer, NioServer, MPIPeer, SharedMemoryPeer), compute runs on the bounded server.computePool
+//every request is recorded in server.stats, STATS [RESET] returns them
+public class RequestHandler {
+    private static final int LEAVES_PER_THREAD = 4;
+
+    private final Server server;
+    private final boolean local; // client is on this host, only such a client may ATTACH a ring file
+
+    public RequestHandler(Server server) {
+        this(server, false);
+    }
+
+    public RequestHandler(Server server, boolean local) {
+        this.server = server;
+        this.local = local;
+    }
+
+    public String handle(String rawMessage) {
+        return handle(rawMessage, System.nanoTime());
+    }
+
+    //receivedAt is the nanoTime the transport had the whole request, time until the handler starts is queue wait
+    public String handle(String rawMessage, long receivedAt) {
+        long startedAt = System.nanoTime();
+        PeerRequestEvent trace = PeerRequestEvent.start(server.getAddress(), receivedAt, startedAt);
+        String response;
+        try {
+            response = execute(rawMessage, trace);
+        } catch (RuntimeException e) {
+            response = "ERROR " + e.getMessage();
+        }
+
+        // JSON is ASCII, so chars + '\n' are the bytes on the wire
+        if (trace != null) {
+            trace.finish(rawMessage.length() + 1, response.length() + 1);
+        }
+        int space = rawMessage.indexOf(' ');
+        server.stats.record(ServerStats.indexOf(space < 0 ? rawMessage : rawMessage.substring(0, space)), receivedAt, startedAt, System.nanoTime(),
+                rawMessage.length() + 1, response.length() + 1, response.startsWith("ERROR"));
+        return response;
+    }
+
+    public BinaryFrame handle(BinaryFrame frame) {
+        return handle(frame, System.nanoTime());
+    }
+
+    //transports with a thread per connection may wait, the answer is never an exception
+    public BinaryFrame handle(BinaryFrame frame, long receivedAt) {
+        return handleAsync(frame, receivedAt).join();
+    }
+
+    //everything but AGGREGATE is done when this returns, AGGREGATE completes when the whole subtree has answered
+    public CompletableFuture<BinaryFrame> handleAsync(BinaryFrame frame, long receivedAt) {
+        long startedAt = System.nanoTime();
+        PeerRequestEvent trace = PeerRequestEvent.start(server.getAddress(), receivedAt, startedAt);
+        CompletableFuture<BinaryFrame> response;
+        try {
+            if (frame.getCommand() == BinaryProtocol.AGGREGATE) {
+                response = aggregate(decoded(trace, "AGGREGATE", BinaryProtocol.decodeAggregate(frame)), trace)
+                        .thenApply(body -> new BinaryFrame(BinaryProtocol.AGGREGATE, frame.getRequestId(), body));
+            } else {
+                response = CompletableFuture.completedFuture(execute(frame, trace));
+            }
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        return response.exceptionally(e -> new BinaryFrame(BinaryProtocol.ERROR, frame.getRequestId(),
+                BinaryProtocol.encodeError(String.valueOf((e instanceof CompletionException ? e.getCause() : e).getMessage()))))
+                .thenApply(answer -> {
+                    if (trace != null) {
+                        trace.finish(BinaryProtocol.HEADER_SIZE + frame.getBody().length, BinaryProtocol.HEADER_SIZE + answer.getBody().length);
+                    }
+                    server.stats.record(ServerStats.indexOf(frame.getCommand()), receivedAt, startedAt, System.nanoTime(),
+                            BinaryProtocol.HEADER_SIZE + frame.getBody().length, BinaryProtocol.HEADER_SIZE + answer.getBody().length,
+                            answer.getCommand() == BinaryProtocol.ERROR);
+                    return answer;
+                });
+    }
+
+    //snapshot first, so a reset answer still shows what was reset
+    private String stats(boolean reset) {
+        String json = server.stats.toJson();
+        if (reset) {
+            server.stats.reset();
+        }
+        return json;
+    }
+
+    //trace is null unless a JFR recording has PeerRequestEvent enabled
+    private static Payload decoded(PeerRequestEvent trace, String command, Payload payload) {
+        if (trace != null) {
+            trace.decoded(command, payload);
+        }
+        return payload;
+    }
+
+    private static void computed(PeerRequestEvent trace) {
+        if (trace != null) {
+            trace.computed();
+        }
+    }
+
+    private String execute(String rawMessage, PeerRequestEvent trace) {
+        String[] parts = rawMessage.split(" ", 2);
+        String command = parts[0].toUpperCase();
+        String data = parts.length > 1 ? parts[1] : "";
+
+        switch (command) {
+            case "NUMBER":
+                int num = Integer.parseInt(data.trim());
+                return "OK " + server.loadLocationsFromDisk(num);
+            case "KMEANS":
+                return handleKMeans(data, trace);
+            case "LOCATION":
+                return handleLocation(data, trace);
+            case "STATS":
+                return stats(data.trim().equalsIgnoreCase("RESET"));
+            default:
+                return "ERROR Unknown command: " + command;
+        }
+    }
+
+    private BinaryFrame execute(BinaryFrame frame, PeerRequestEvent trace) {
+        switch (frame.getCommand()) {
+            case BinaryProtocol.NUMBER:
+                int datasetId = server.loadLocationsFromDisk(BinaryProtocol.decodeNumber(frame));
+                return new BinaryFrame(BinaryProtocol.NUMBER, frame.getRequestId(), BinaryProtocol.encodeNumber(datasetId));
+            case BinaryProtocol.KMEANS:
+                Payload payload = decoded(trace, "KMEANS", BinaryProtocol.decodePayload(frame));
+                int k = payload.getCentroids().length;
+                double[] sums = new double[k * 3];
+                long[] counts = new long[k];
+                reduceKMeans(payload, sums, counts);
+                computed(trace);
+                return new BinaryFrame(BinaryProtocol.KMEANS, frame.getRequestId(), BinaryProtocol.encodePartials(sums, counts));
+            case BinaryProtocol.ATTACH:
+                if (!local) {
+                    return new BinaryFrame(BinaryProtocol.ERROR, frame.getRequestId(),
+                            BinaryProtocol.encodeError("ATTACH is only accepted from this host"));
+                }
+                server.attachShared(Path.of(new String(frame.getBody(), StandardCharsets.UTF_8)));
+                return new BinaryFrame(BinaryProtocol.ATTACH, frame.getRequestId(), new byte[0]);
+            case BinaryProtocol.LOCATION:
+                int[] labels = assignLabels(decoded(trace, "LOCATION", BinaryProtocol.decodePayload(frame)));
+                computed(trace);
+                return new BinaryFrame(BinaryProtocol.LOCATION, frame.getRequestId(), ClusterLabels.encode(labels));
+            case BinaryProtocol.STATS:
+                return new BinaryFrame(BinaryProtocol.STATS, frame.getRequestId(),
+                        stats(BinaryProtocol.decodeStatsReset(frame)).getBytes(StandardCharsets.UTF_8));
+            default:
+                return new BinaryFrame(BinaryProtocol.ERROR, frame.getRequestId(),
+                        BinaryProtocol.encodeError("Unknown command: " + frame.getCommand()));
+        }
+    }
+
+    //forward the subtrees first, assign own range while they work, merge when the last child answers
+    //nothing waits for the children, the merge runs on the thread that completes the last of them
+    //the fit id goes down the tree too, so every peer of the subtree shows up in the trace
+    private CompletableFuture<byte[]> aggregate(Payload payload, PeerRequestEvent trace) {
+        for (AggregationNode child : payload.getChildren()) {
+            if (!server.isPeer(child.getHost(), child.getPort())) {
+                throw new IllegalArgumentException("Not a peer of this server: " + child.getHost() + ":" + child.getPort());
+            }
+        }
+
+        List<CompletableFuture<BinaryFrame>> forwarded = new ArrayList<>();
+        for (AggregationNode child : payload.getChildren()) {
+            byte[] body = BinaryProtocol.encodeAggregate(payload.getDatasetId(), payload.getCentroids(), child,
+                    payload.getFitId(), payload.getIteration());
+            forwarded.add(server.forward(child, body));
+        }
+
+        int k = payload.getCentroids().length;
+        double[] sums = new double[k * 3];
+        long[] counts = new long[k];
+        if (payload.getStart() < payload.getEnd()) {
+            reduceKMeans(payload, sums, counts);
+        }
+
+        return CompletableFuture.allOf(forwarded.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            for (CompletableFuture<BinaryFrame> future : forwarded) {
+                BinaryFrame response = future.join(); // already done
+                if (response.getCommand() == BinaryProtocol.ERROR) {
+                    throw new IllegalStateException("Subtree failed: " + BinaryProtocol.decodeError(response));
+                }
+                BinaryProtocol.addPartials(response, sums, counts);
+            }
+            computed(trace);
+            return BinaryProtocol.encodePartials(sums, counts);
+        });
+    }
+
+    private String handleLocation(String data, PeerRequestEvent trace) {
+        int[] labels = assignLabels(decoded(trace, "LOCATION", JsonPayloadParser.parsePayload(data)));
+        computed(trace);
+        return ClusterLabels.toJson(labels);
+    }
+
+    //only cluster ids go back, the coordinator colors its own points
+    private int[] assignLabels(Payload payload) {
+        LocationStore locations = server.datasets.get(payload.getDatasetId());
+        return ClusterLabels.assign(locations, payload.getStart(), payload.getEnd(), payload.getCentroids(), server.kernel);
+    }
+
+    private String handleKMeans(String data, PeerRequestEvent trace) {
+        Payload payload = decoded(trace, "KMEANS", JsonPayloadParser.parsePayload(data));
+        Location[] centroids = payload.getCentroids();
+        double[] sums = new double[centroids.length * 3];
+        long[] counts = new long[centroids.length];
+
+        reduceKMeans(payload, sums, counts);
+        computed(trace);
+        return partialsToJson(sums, counts);
+    }
+
+    //JSON answer of KMEANS, mean and count per cluster
+    static String partialsToJson(double[] sums, long[] counts) {
+        // djelomicni centroide
+        JsonArrayBuilder reducedCentroids = Json.createArrayBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            long totalCount = counts[i];
+
+            Location reduced = totalCount == 0 ? new Location("Centroid", 0, 0, 0)
+                    : new Location(
+                    "Centroid",
+                    sums[i * 3 + 2] / totalCount,
+                    sums[i * 3] / totalCount,
+                    sums[i * 3 + 1] / totalCount);
+
+            JsonObject json = Json.createObjectBuilder()
+                    .add("name", reduced.getName())
+                    .add("capacity", reduced.getCapacity())
+                    .add("la", reduced.getLa())
+                    .add("lo", reduced.getLo())
+                    .add("count", totalCount)
+                    .build();
+            reducedCentroids.add(json);
+        }
+
+        JsonObject result = Json.createObjectBuilder()
+                .add("centroids", reducedCentroids)
+                .build();
+
+        return result.toString();
+    }
+
+    //assign points of payload range and sum them per cluster into sums[k*3] (la, lo, capacity) and counts[k]
+    private void reduceKMeans(Payload payload, double[] sums, long[] counts) {
+        int start = payload.getStart();
+        int end = payload.getEnd();
+        Location[] centroids = payload.getCentroids();
+        int k = centroids.length;
+
+        double[] centroidData = new double[k * 3];
+        for (int i = 0; i < k; i++) {
+            centroidData[i * 3] = centroids[i].getLa();
+            centroidData[i * 3 + 1] = centroids[i].getLo();
+            centroidData[i * 3 + 2] = centroids[i].getCapacity();
+        }
+
+        int size = end - start;
+        int leaves = Math.max(1, Math.min(size, server.computePool.getParallelism() * LEAVES_PER_THREAD));
+        int leafSize = (size + leaves - 1) / leaves;
+        double[][] leafSums = new double[leaves][k * 3];
+        long[][] leafCounts = new long[leaves][k];
+
+        // dataset deli vise koordinatora, labele ovog zahteva idu u njegov bafer a ne u kolonu store-a
+        LocationStore locations = server.datasets.get(payload.getDatasetId());
+        server.computePool.invoke(new AssignmentTask(locations, centroidData, server.kernel,
+                leafSums, leafCounts, start, end, leafSize, 0, leaves, new int[size]));
+
+        System.arraycopy(leafSums[0], 0, sums, 0, sums.length);
+        System.arraycopy(leafCounts[0], 0, counts, 0, counts.length);
+    }
+}
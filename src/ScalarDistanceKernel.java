@@ -0,0 +1,24 @@
+public class ScalarDistanceKernel implements DistanceKernel {
+    @Override
+    public void assign(double[] la, double[] lo, double[] capacity, int start, int end, double[] centroids, int[] assignment, int offset) {
+        for (int p = start; p < end; p++) {
+            assignment[p - offset] = closest(la[p], lo[p], capacity[p], centroids);
+        }
+    }
+
+    static int closest(double la, double lo, double capacity, double[] centroids) {
+        double minDist = Double.MAX_VALUE;
+        int closest = 0;
+        for (int i = 0, c = 0; c < centroids.length; i++, c += 3) {
+            double latDiff = la - centroids[c];
+            double lonDiff = lo - centroids[c + 1];
+            double capacityDiff = capacity - centroids[c + 2];
+            double dist = latDiff * latDiff + lonDiff * lonDiff + capacityDiff * capacityDiff;
+            if (dist < minDist) {
+                minDist = dist;
+                closest = i;
+            }
+        }
+        return closest;
+    }
+}
@@ -1,27 +1,145 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.net.UnknownHostException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Server extends Thread {
-    private final int port;
+    private static final String SOURCE = Location.DATA_FILE;
 
-    public List<Location> locations = new ArrayList<>();
+    protected final int port;
 
-    public ExecutorService executor = Executors.newCachedThreadPool();
+    public final DatasetRegistry datasets = new DatasetRegistry();
+
+    public final ServerStats stats = new ServerStats(); // STATS command
+
+    public ExecutorService executor = Executors.newCachedThreadPool(); // connection threads
+
+    // assignment work, bounded to the cores so a burst of connections does not oversubscribe them
+    public final ForkJoinPool computePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    // -Dkmeans.kernel=vector for the SIMD kernel (needs --add-modules jdk.incubator.vector)
+    public final DistanceKernel kernel = DistanceKernel.create(
+            "vector".equalsIgnoreCase(System.getProperty("kmeans.kernel")) ? AssignmentMode.VECTOR : AssignmentMode.STANDARD);
+
+    private volatile String address; // host:port in trace events
+
+    // AGGREGATE children, host:port, shared by every connection of this server and open as long as it runs
+    private final Map<String, PeerConnection> children = new ConcurrentHashMap<>();
+    private final AtomicInteger childRequestIds = new AtomicInteger(0); // unique per child connection, all handlers share them
+    // the only targets AGGREGATE is forwarded to: -Dkmeans.peers=host:port,... and those added with registerPeer
+    private final Set<String> peers = ConcurrentHashMap.newKeySet();
 
     public Server(int port) {
         this.port = port;
+        for (String peer : System.getProperty("kmeans.peers", "").split(",")) {
+            if (!peer.isBlank()) {
+                int colon = peer.lastIndexOf(':');
+                registerPeer(peer.substring(0, colon).trim(), Integer.parseInt(peer.substring(colon + 1).trim()));
+            }
+        }
+    }
+
+    public void registerPeer(String host, int port) {
+        peers.add(peerKey(host, port));
+    }
+
+    public boolean isPeer(String host, int port) {
+        try {
+            return peers.contains(peerKey(host, port));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 
-    public synchronized void loadLocationsFromDisk(int number) {
-        String filePath = "./src/germany.json";
-        Location.loadLocations(filePath, locations, number);
+    //address instead of the name, so a peer is the same whichever name it was given by
+    private static String peerKey(String host, int port) {
+        try {
+            return InetAddress.getByName(host).getHostAddress() + ":" + port;
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown peer host: " + host, e);
+        }
+    }
 
+    public String getAddress() {
+        if (address == null) {
+            try {
+                address = InetAddress.getLocalHost().getHostName() + ":" + port;
+            } catch (IOException e) {
+                address = "localhost:" + port;
+            }
+        }
+        return address;
+    }
+
+    //loads only the first time, returns id of resident dataset
+    public int loadLocationsFromDisk(int number) {
+        return datasets.load(SOURCE, number);
+    }
+
+    //one AGGREGATE request to the root of a subtree, pipelined with those of other requests on a pooled connection
+    //a child that is not a known peer is refused, a client can not make this server connect anywhere else
+    public CompletableFuture<BinaryFrame> forward(AggregationNode node, byte[] body) {
+        String target = peerKey(node.getHost(), node.getPort());
+        if (!peers.contains(target)) {
+            throw new IllegalArgumentException("Not a peer of this server: " + node.getHost() + ":" + node.getPort());
+        }
+        PeerConnection connection = children.compute(target, (key, open) -> {
+            if (open != null && open.isOpen()) {
+                return open;
+            }
+            try {
+                return new PeerConnection(key.substring(0, key.lastIndexOf(':')), node.getPort(), Long.getLong("kmeans.deadline", 30_000));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot reach " + key, e);
+            }
+        });
+        return connection.sendBinary(BinaryProtocol.AGGREGATE, childRequestIds.incrementAndGet(), body);
+    }
+
+    //loopback or an address of one of our interfaces
+    public static boolean isLocal(InetAddress address) {
+        try {
+            return address.isLoopbackAddress() || NetworkInterface.getByInetAddress(address) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    //client on this host asked for a ring file instead of the socket, served by its own thread
+    //only kmeans-*.ring files directly in SharedMemoryRing.directory() that already hold a ring are mapped
+    //peers sharing a host load the dataset from the mapped location cache, so it is written once here
+    public void attachShared(Path ringFile) {
+        try {
+            Path file = ringFile.toRealPath(); // symlinks can not point out of the directory
+            String name = file.getFileName().toString();
+            if (!file.getParent().equals(SharedMemoryRing.directory().toRealPath()) || !Files.isRegularFile(file)
+                    || !name.startsWith("kmeans-") || !name.endsWith(".ring")) {
+                throw new IllegalArgumentException("Not a ring file: " + ringFile);
+            }
+            MappedByteBuffer mapping = SharedMemoryRing.open(file);
+
+            synchronized (this) {
+                if (!LocationCache.isCurrent(SOURCE)) {
+                    LocationCache.write(SOURCE);
+                }
+            }
+            executor.submit(new SharedMemoryPeer(mapping, this));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot attach " + ringFile, e);
+        }
     }
 
 
@@ -49,15 +167,8 @@ public class Server extends Thread {
                 continue;
             }
 
-            System.out.println("---- New connection: ----");
-            System.out.println("-> Local IP: " + newPeer.getLocalAddress());
-            System.out.println("-> Local Port: " + newPeer.getLocalPort());
-            System.out.println("-> Remote IP: " + newPeer.getInetAddress());
-            System.out.println("-> Remote Port: " + newPeer.getPort());
-            System.out.println("-------------------------");
-
             try {
-                executor.submit(new Peer(newPeer, this));
+                executor.submit(new Peer(newPeer, this, isLocal(newPeer.getInetAddress())));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
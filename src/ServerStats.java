@@ -0,0 +1,142 @@
+import javax.json.Json;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObjectBuilder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//counters of one server for the STATS command, every transport records through RequestHandler
+//queue = from the whole request being read until the handler starts, compute = handler, total = both,
+//writing the answer back is not included
+public class ServerStats {
+    private static final String[] COMMANDS = {"NUMBER", "KMEANS", "LOCATION", "AGGREGATE", "ATTACH", "STATS", "OTHER"};
+    private static final JsonBuilderFactory JSON = Json.createBuilderFactory(null); // Json.create* looks the provider up on every call
+
+    private final CommandStats[] commands = new CommandStats[COMMANDS.length];
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder connections = new LongAdder();
+    private final long startedMillis = System.currentTimeMillis();
+    private volatile long resetMillis = startedMillis;
+
+    private static class CommandStats {
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram queue = new LatencyHistogram();
+        final LatencyHistogram compute = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder requestBytes = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+
+        void reset() {
+            total.reset();
+            queue.reset();
+            compute.reset();
+            errors.reset();
+            requestBytes.reset();
+            responseBytes.reset();
+        }
+    }
+
+    public ServerStats() {
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = new CommandStats();
+        }
+    }
+
+    //text commands are matched by name, anything unknown is counted as OTHER so garbage can not grow the table
+    public static int indexOf(String command) {
+        for (int i = 0; i < COMMANDS.length - 1; i++) {
+            if (COMMANDS[i].equalsIgnoreCase(command)) {
+                return i;
+            }
+        }
+        return COMMANDS.length - 1;
+    }
+
+    public static int indexOf(byte command) {
+        switch (command) {
+            case BinaryProtocol.NUMBER:
+                return 0;
+            case BinaryProtocol.KMEANS:
+                return 1;
+            case BinaryProtocol.LOCATION:
+                return 2;
+            case BinaryProtocol.AGGREGATE:
+                return 3;
+            case BinaryProtocol.ATTACH:
+                return 4;
+            case BinaryProtocol.STATS:
+                return 5;
+            default:
+                return COMMANDS.length - 1;
+        }
+    }
+
+    //times are System.nanoTime values
+    public void record(int command, long receivedAt, long startedAt, long finishedAt, long requestBytes, long responseBytes, boolean failed) {
+        CommandStats stats = commands[command];
+        stats.queue.record(startedAt - receivedAt);
+        stats.compute.record(finishedAt - startedAt);
+        stats.total.record(finishedAt - receivedAt);
+        stats.requestBytes.add(requestBytes);
+        stats.responseBytes.add(responseBytes);
+        if (failed) {
+            stats.errors.increment();
+        }
+    }
+
+    public void connectionOpened() {
+        activeConnections.incrementAndGet();
+        connections.increment();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    //active connections are a gauge and survive a reset
+    public void reset() {
+        for (CommandStats stats : commands) {
+            stats.reset();
+        }
+        connections.reset();
+        resetMillis = System.currentTimeMillis();
+    }
+
+    //latencies in microseconds, commands that were never called are left out
+    public String toJson() {
+        JsonObjectBuilder perCommand = JSON.createObjectBuilder();
+        for (int i = 0; i < COMMANDS.length; i++) {
+            CommandStats stats = commands[i];
+            if (stats.total.count() == 0) {
+                continue;
+            }
+            perCommand.add(COMMANDS[i], JSON.createObjectBuilder()
+                    .add("count", stats.total.count())
+                    .add("errors", stats.errors.sum())
+                    .add("requestBytes", stats.requestBytes.sum())
+                    .add("responseBytes", stats.responseBytes.sum())
+                    .add("total", latency(stats.total))
+                    .add("queue", latency(stats.queue))
+                    .add("compute", latency(stats.compute)));
+        }
+
+        long now = System.currentTimeMillis();
+        return JSON.createObjectBuilder()
+                .add("uptimeMillis", now - startedMillis)
+                .add("sinceResetMillis", now - resetMillis)
+                .add("activeConnections", activeConnections.get())
+                .add("connections", connections.sum())
+                .add("commands", perCommand)
+                .build()
+                .toString();
+    }
+
+    private static JsonObjectBuilder latency(LatencyHistogram histogram) {
+        return JSON.createObjectBuilder()
+                .add("mean", histogram.mean() / 1e3)
+                .add("p50", histogram.percentile(0.50) / 1e3)
+                .add("p90", histogram.percentile(0.90) / 1e3)
+                .add("p99", histogram.percentile(0.99) / 1e3)
+                .add("p999", histogram.percentile(0.999) / 1e3)
+                .add("max", histogram.max() / 1e3);
+    }
+}
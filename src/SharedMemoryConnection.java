@@ -0,0 +1,92 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+//channel to a peer on the same host through a mapped file with a request and a response ring
+//the socket is used once to tell the peer where the file is (ATTACH), after that requests never touch the kernel
+public class SharedMemoryConnection extends PeerChannel {
+    private static final int DEFAULT_RING_SIZE = 16 << 20; // -Dkmeans.shm.ringSize, bytes per direction
+
+    private final Path path;
+    private final MappedByteBuffer mapping;
+    private final SharedMemoryRing requests;
+    private final SharedMemoryRing responses;
+
+    public SharedMemoryConnection(String host, int port, long deadlineMillis) throws IOException {
+        super(deadlineMillis);
+        this.path = Files.createTempFile(SharedMemoryRing.directory(), "kmeans-" + port + "-", ".ring");
+
+        try {
+            this.mapping = SharedMemoryRing.create(path, Integer.getInteger("kmeans.shm.ringSize", DEFAULT_RING_SIZE));
+            this.requests = SharedMemoryRing.requests(mapping);
+            this.responses = SharedMemoryRing.responses(mapping);
+            attach(host, port);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+
+        Thread reader = new Thread(this::readResponses, "SharedMemoryConnection-" + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void attach(String host, int port) throws IOException {
+        PeerConnection control = new PeerConnection(host, port, deadlineMillis);
+        try {
+            BinaryFrame response = control.sendBinary(BinaryProtocol.ATTACH, 0, path.toString().getBytes(StandardCharsets.UTF_8)).join();
+            if (response.getCommand() == BinaryProtocol.ERROR) {
+                throw new IOException("Peer refused shared memory: " + BinaryProtocol.decodeError(response));
+            }
+        } catch (CompletionException e) {
+            throw new IOException("Could not attach shared memory to " + host + ":" + port, e.getCause());
+        } finally {
+            control.close();
+        }
+    }
+
+    @Override
+    protected void write(BinaryFrame frame) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BinaryProtocol.HEADER_SIZE + frame.getBody().length);
+        BinaryProtocol.writeFrame(out, frame);
+        requests.write(out.toByteArray(), TimeUnit.MILLISECONDS.toNanos(deadlineMillis));
+    }
+
+    @Override
+    protected void write(String line) throws IOException {
+        requests.write(line.getBytes(StandardCharsets.UTF_8), TimeUnit.MILLISECONDS.toNanos(deadlineMillis));
+    }
+
+    private void readResponses() {
+        try {
+            while (open) {
+                byte[] record = responses.read();
+                if (record.length > 0 && record[0] == BinaryProtocol.MAGIC) {
+                    received(BinaryProtocol.readFrame(new ByteArrayInputStream(record)));
+                } else {
+                    received(new String(record, StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            failAll(e);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    protected void closeTransport() {
+        SharedMemoryRing.close(mapping);
+        try {
+            Files.deleteIfExists(path); // peer keeps its mapping until it sees the close
+        } catch (IOException e) {
+            System.out.println("Failed to delete ring file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//server side of a SharedMemoryConnection, answers the request ring in order like Peer answers its socket
+public class SharedMemoryPeer implements Runnable {
+    private final MappedByteBuffer mapping;
+    private final SharedMemoryRing requests;
+    private final SharedMemoryRing responses;
+    private final RequestHandler handler;
+    private final Server server;
+
+    public SharedMemoryPeer(MappedByteBuffer mapping, Server server) {
+        this.server = server;
+        this.mapping = mapping;
+        this.requests = SharedMemoryRing.requests(mapping);
+        this.responses = SharedMemoryRing.responses(mapping);
+        this.handler = new RequestHandler(server, true);
+    }
+
+    @Override
+    public void run() {
+        server.stats.connectionOpened();
+        try {
+            while (true) {
+                byte[] record = requests.read();
+                long receivedAt = System.nanoTime();
+                if (record.length > 0 && record[0] == BinaryProtocol.MAGIC) {
+                    BinaryFrame response = handler.handle(BinaryProtocol.readFrame(new ByteArrayInputStream(record), BinaryProtocol.MAX_REQUEST), receivedAt);
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(BinaryProtocol.HEADER_SIZE + response.getBody().length);
+                    BinaryProtocol.writeFrame(out, response);
+                    responses.write(out.toByteArray(), 0);
+                } else {
+                    String response = handler.handle(new String(record, StandardCharsets.UTF_8), receivedAt);
+                    responses.write(response.getBytes(StandardCharsets.UTF_8), 0);
+                }
+            }
+        } catch (EOFException e) {
+            // klijent je zatvorio ring
+        } catch (IOException e) {
+            System.out.println("Shared memory peer failed: " + e.getMessage());
+        } finally {
+            SharedMemoryRing.close(mapping);
+            server.stats.connectionClosed();
+        }
+    }
+}
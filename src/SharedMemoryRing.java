@@ -0,0 +1,172 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+//single producer / single consumer byte ring inside a mapped file, two processes on one host talk through it
+//file: header(64) then the request ring and the response ring, each ring is head(64) tail(64) data(capacity)
+//head and tail only grow, record = length(4) bytes(length), a record may wrap around the end of the data area
+public class SharedMemoryRing {
+    private static final int MAGIC = 0x4B524E47; // "KRNG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int CONTROL_SIZE = 128; // head i tail u posebnim cache linijama
+    private static final int CLOSED_OFFSET = 12;
+    private static final long SPIN_NANOS = 50_000;   // busy wait, an answer usually comes within this
+    private static final long YIELD_NANOS = 1_000_000;
+    private static final long PARK_NANOS = 50_000;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer mapping;
+    private final int headOffset;
+    private final int tailOffset;
+    private final int dataOffset;
+    private final int capacity;
+
+    private SharedMemoryRing(MappedByteBuffer mapping, int offset, int capacity) {
+        this.mapping = mapping;
+        this.headOffset = offset;
+        this.tailOffset = offset + 64;
+        this.dataOffset = offset + CONTROL_SIZE;
+        this.capacity = capacity;
+    }
+
+    //where ring files live, tmpfs when the system has it, so the mapping is never written back to disk
+    //-Dkmeans.shm.dir must be the same for the client and the server, the server attaches nothing outside of it
+    public static Path directory() {
+        String configured = System.getProperty("kmeans.shm.dir");
+        if (configured != null) {
+            return Path.of(configured);
+        }
+        Path shm = Path.of("/dev/shm");
+        return Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Path.of(System.getProperty("java.io.tmpdir"));
+    }
+
+    //new file with two empty rings of ringCapacity bytes each, rounded so head and tail stay aligned
+    public static MappedByteBuffer create(Path path, int ringCapacity) throws IOException {
+        ringCapacity = (ringCapacity + 63) & ~63;
+        long size = HEADER_SIZE + 2L * (CONTROL_SIZE + ringCapacity);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapping.order(ByteOrder.nativeOrder());
+            mapping.putInt(4, VERSION).putInt(8, ringCapacity);
+            INTS.setRelease(mapping, 0, MAGIC); // magic last, the other side checks it first
+            return mapping;
+        }
+    }
+
+    public static MappedByteBuffer open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            mapping.order(ByteOrder.nativeOrder());
+            if (mapping.limit() < HEADER_SIZE || (int) INTS.getAcquire(mapping, 0) != MAGIC || mapping.getInt(4) != VERSION
+                    || mapping.limit() != HEADER_SIZE + 2L * (CONTROL_SIZE + mapping.getInt(8))) {
+                throw new IOException("Not a ring file: " + path);
+            }
+            return mapping;
+        }
+    }
+
+    public static SharedMemoryRing requests(MappedByteBuffer mapping) {
+        return new SharedMemoryRing(mapping, HEADER_SIZE, mapping.getInt(8));
+    }
+
+    public static SharedMemoryRing responses(MappedByteBuffer mapping) {
+        int capacity = mapping.getInt(8);
+        return new SharedMemoryRing(mapping, HEADER_SIZE + CONTROL_SIZE + capacity, capacity);
+    }
+
+    //either side closes both rings, the other side sees it on its next read or write
+    public static void close(MappedByteBuffer mapping) {
+        INTS.setRelease(mapping, CLOSED_OFFSET, 1);
+    }
+
+    public static boolean isClosed(MappedByteBuffer mapping) {
+        return (int) INTS.getAcquire(mapping, CLOSED_OFFSET) != 0;
+    }
+
+    //blocks while the ring is full, timeoutNanos <= 0 waits forever
+    public void write(byte[] record, long timeoutNanos) throws IOException {
+        int needed = 4 + record.length;
+        if (needed > capacity) {
+            throw new IOException("Record of " + record.length + " bytes does not fit ring of " + capacity);
+        }
+
+        long tail = (long) LONGS.getOpaque(mapping, tailOffset); // samo ovaj proces pise tail
+        long since = System.nanoTime();
+        while (tail + needed - (long) LONGS.getAcquire(mapping, headOffset) > capacity) {
+            long waited = backOff(since);
+            if (timeoutNanos > 0 && waited > timeoutNanos) {
+                throw new IOException("Ring full", new TimeoutException());
+            }
+        }
+
+        byte[] length = {(byte) record.length, (byte) (record.length >>> 8), (byte) (record.length >>> 16), (byte) (record.length >>> 24)};
+        copyIn(tail, length);
+        copyIn(tail + 4, record);
+        LONGS.setRelease(mapping, tailOffset, tail + needed);
+    }
+
+    //blocks until a record arrives, EOFException once the ring is closed
+    public byte[] read() throws IOException {
+        long head = (long) LONGS.getOpaque(mapping, headOffset);
+        long since = System.nanoTime();
+        while ((long) LONGS.getAcquire(mapping, tailOffset) == head) {
+            backOff(since);
+        }
+
+        byte[] length = new byte[4];
+        copyOut(head, length);
+        int size = (length[0] & 0xFF) | (length[1] & 0xFF) << 8 | (length[2] & 0xFF) << 16 | (length[3] & 0xFF) << 24;
+        if (size < 0 || size > capacity - 4) {
+            throw new IOException("Corrupt ring record length: " + size);
+        }
+
+        byte[] record = new byte[size];
+        copyOut(head + 4, record);
+        LONGS.setRelease(mapping, headOffset, head + 4 + size);
+        return record;
+    }
+
+    //vrti, pa ustupa, pa parkira: brz odgovor ne ceka tajmer, a prazan ring ne drzi jezgro
+    //returns nanos waited since the wait started
+    private long backOff(long since) throws IOException {
+        if (isClosed(mapping)) {
+            throw new EOFException("Ring closed");
+        }
+
+        long waited = System.nanoTime() - since;
+        if (waited < SPIN_NANOS) {
+            Thread.onSpinWait();
+        } else if (waited < YIELD_NANOS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return waited;
+    }
+
+    private void copyIn(long position, byte[] source) {
+        int at = (int) (position % capacity);
+        int first = Math.min(source.length, capacity - at);
+        mapping.put(dataOffset + at, source, 0, first);
+        mapping.put(dataOffset, source, first, source.length - first);
+    }
+
+    private void copyOut(long position, byte[] target) {
+        int at = (int) (position % capacity);
+        int first = Math.min(target.length, capacity - at);
+        mapping.get(dataOffset + at, target, 0, first);
+        mapping.get(dataOffset, target, first, target.length - first);
+    }
+}
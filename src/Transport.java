@@ -0,0 +1,4 @@
+public enum Transport {
+    TCP,           // socket per connection, works for any host
+    SHARED_MEMORY  // mapped ring buffers for peers on this host, other hosts still use TCP, see SharedMemoryRing
+}
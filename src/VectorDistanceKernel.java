@@ -0,0 +1,48 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+//one lane per point, every centroid is broadcast and compared against all lanes at once
+//needs --add-modules jdk.incubator.vector
+public class VectorDistanceKernel implements DistanceKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    @Override
+    public void assign(double[] la, double[] lo, double[] capacity, int start, int end, double[] centroids, int[] assignment, int offset) {
+        int lanes = DOUBLES.length();
+        int p = start;
+
+        for (; p + lanes <= end; p += lanes) {
+            DoubleVector pointLa = DoubleVector.fromArray(DOUBLES, la, p);
+            DoubleVector pointLo = DoubleVector.fromArray(DOUBLES, lo, p);
+            DoubleVector pointCapacity = DoubleVector.fromArray(DOUBLES, capacity, p);
+
+            DoubleVector minDist = DoubleVector.broadcast(DOUBLES, Double.MAX_VALUE);
+            DoubleVector closest = DoubleVector.zero(DOUBLES);
+
+            for (int i = 0, c = 0; c < centroids.length; i++, c += 3) {
+                DoubleVector latDiff = pointLa.sub(centroids[c]);
+                DoubleVector lonDiff = pointLo.sub(centroids[c + 1]);
+                DoubleVector capacityDiff = pointCapacity.sub(centroids[c + 2]);
+                DoubleVector dist = latDiff.mul(latDiff)
+                        .add(lonDiff.mul(lonDiff))
+                        .add(capacityDiff.mul(capacityDiff));
+
+                VectorMask<Double> closer = dist.compare(VectorOperators.LT, minDist);
+                minDist = minDist.blend(dist, closer);
+                closest = closest.blend(i, closer);
+            }
+
+            ((IntVector) closest.convertShape(VectorOperators.D2I, INTS, 0)).intoArray(assignment, p - offset);
+        }
+
+        for (; p < end; p++) {
+            assignment[p - offset] = ScalarDistanceKernel.closest(la[p], lo[p], capacity[p], centroids);
+        }
+    }
+}
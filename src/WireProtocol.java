@@ -0,0 +1,4 @@
+public enum WireProtocol {
+    JSON,   // one newline terminated JSON line per request
+    BINARY  // length prefixed frames with raw little-endian doubles, see BinaryProtocol
+}
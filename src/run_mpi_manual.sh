@@ -1,8 +1,9 @@
 #!/bin/bash
+# run from src/, JAVAFX_LIB is only needed for the GUI (last MPIMain argument > 0)
 
-MPJ_JAR=../../../mpj-v0_44/lib/mpj.jar
-JSON_JAR=../../../javax.json-1.0.4.jar
-JAVAFX_LIB=/home/janko/89221073_k-means/openjfx-24.0.1_linux-x64_bin-sdk/javafx-sdk-24.0.1/lib
+MPJ_JAR=${MPJ_JAR:-../../../mpj-v0_44/lib/mpj.jar}
+JSON_JAR=${JSON_JAR:-../../../javax.json-1.0.4.jar}
+JAVAFX_LIB=${JAVAFX_LIB:?set JAVAFX_LIB to the javafx-sdk lib directory}
 CLASS_DIR=.
 
 for i in {0..3}; do
@@ -10,6 +11,8 @@ for i in {0..3}; do
   java \
     --module-path "$JAVAFX_LIB" \
     --add-modules javafx.controls,javafx.fxml,javafx.web \
+    -Dkmeans.data=./germany.json \
+    -Dkmeans.javafx="$JAVAFX_LIB" \
     -cp "$CLASS_DIR:$MPJ_JAR:$JSON_JAR" \
     MPIMain $i &
 done